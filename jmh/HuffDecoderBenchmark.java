@@ -0,0 +1,103 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compares decode throughput of the table-driven <code>HuffDecoder</code>
+ * against the bit-at-a-time tree walk it replaces. The corpus is encoded
+ * once in memory and then decoded repeatedly by both decoders.
+ * <P>
+ * Built by the jmh profile, run with
+ * <code>java -cp target/benchmarks.jar HuffDecoderBenchmark [sizeInBytes] [rounds]</code>.
+ */
+public class HuffDecoderBenchmark implements IHuffConstants {
+
+	public static void main(String[] args) throws IOException {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 8 << 20;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		byte[] data = textLike(size, new Random(42));
+
+		//encode the corpus once
+		Huff huff = new Huff();
+		huff.makeHuffTree(new ByteArrayInputStream(data));
+		huff.makeTable();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitOutputStream out = new BitOutputStream(bytes);
+		huff.writeHeader(out);
+		for(byte b : data) {
+			String code = huff.getCode(b & 0xff);
+			out.write(code.length(), Integer.parseInt(code, 2));
+		}
+		String eof = huff.getCode(PSEUDO_EOF);
+		out.write(eof.length(), Integer.parseInt(eof, 2));
+		out.close();
+		byte[] encoded = bytes.toByteArray();
+
+		for(int r = 0; r < rounds; r++) {
+			long t0 = System.nanoTime();
+			long n1 = treeWalk(encoded);
+			long t1 = System.nanoTime();
+			long n2 = table(encoded, false);
+			long t2 = System.nanoTime();
+			long n3 = table(encoded, true);
+			long t3 = System.nanoTime();
+			if(n1 != data.length || n2 != data.length || n3 != data.length) {
+				throw new IllegalStateException("decoded " + n1 + "/" + n2 + "/" + n3 + " of " + data.length);
+			}
+			System.out.printf("round %d: tree walk %.1f MB/s, table %.1f MB/s, table + BufferedBitInputStream %.1f MB/s%n",
+					r, mbPerSec(n1, t1 - t0), mbPerSec(n2, t2 - t1), mbPerSec(n3, t3 - t2));
+		}
+	}
+
+	/**
+	 * the original decode loop, one read(1) and one pointer chase per bit
+	 */
+	private static long treeWalk(byte[] encoded) throws IOException {
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(encoded));
+		IHuffBaseNode root = new Huff().readHeader(in).root();
+		IHuffBaseNode cur = root;
+		long n = 0;
+		while(true) {
+			if(cur.isLeaf()) {
+				if(((HuffLeafNode)cur).element() == PSEUDO_EOF) {
+					return n;
+				}
+				n++;
+				cur = root;
+			}
+			int bit = in.read(1);
+			if(bit == -1) {
+				throw new IOException("unexpected end of input file");
+			}
+			cur = bit == 0 ? ((HuffInternalNode)cur).left() : ((HuffInternalNode)cur).right();
+		}
+	}
+
+	private static long table(byte[] encoded, boolean buffered) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(encoded);
+		BitInputStream in = buffered ? new BufferedBitInputStream(bytes) : new BitInputStream(bytes);
+		HuffDecoder decoder = new HuffDecoder(new Huff().readHeader(in));
+		long n = 0;
+		while(decoder.decode(in) != PSEUDO_EOF) {
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * letters with an English-like skew plus spaces and newlines
+	 */
+	static byte[] textLike(int size, Random rnd) {
+		String alphabet = "eeeeeeeeeeeettttttttaaaaaaaoooooooiiiiiiinnnnnnsssssshhhhhhrrrrrdddlllcuumwfgypbvkjxqz        \n";
+		byte[] data = new byte[size];
+		for(int i = 0; i < size; i++) {
+			data[i] = (byte)alphabet.charAt(rnd.nextInt(alphabet.length()));
+		}
+		return data;
+	}
+
+	static double mbPerSec(long bytes, long nanos) {
+		return bytes / (nanos / 1e9) / (1 << 20);
+	}
+}
@@ -0,0 +1,251 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import bench.Codec;
+
+/**
+ * The stages measured by the benchmarks in <code>bench</code>, over one
+ * generated corpus. Everything a stage needs besides the stage itself,
+ * e.g., the counts for building the tree or the compressed corpus for
+ * decoding, is prepared once by <code>prepare</code>.
+ */
+public class JmhCodec implements Codec, IHuffConstants {
+
+	private byte[] data;
+	private CharCounter counts;
+	private long[] weights;
+	private Huff tableHuff;
+	private byte[] compressed;
+	private int[] lens;
+	private int[] codes;
+	private ByteBuffer direct;
+	private ByteBuffer packed;
+	private ByteBuffer packedReady;
+	private ByteBuffer unpacked;
+
+	@Override
+	public Codec prepare(String corpus, int size) throws IOException {
+		JmhCodec codec = new JmhCodec();
+		codec.init(generate(corpus, size, new Random(42)));
+		return codec;
+	}
+
+	private void init(byte[] corpus) throws IOException {
+		data = corpus;
+		counts = new CharCounter();
+		counts.countAll(new ByteArrayInputStream(data));
+		weights = new long[ALPH_SIZE + 1];
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			weights[i] = counts.getLongCount(i);
+		}
+		weights[PSEUDO_EOF] = 1;
+		tableHuff = new Huff();
+		tableHuff.makeHuffTree(counts);
+		tableHuff.makeTable();
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		new Huff().write(data, 0, data.length, encoded, true);
+		compressed = encoded.toByteArray();
+		lens = new int[data.length];
+		codes = new int[data.length];
+		for(int i = 0; i < data.length; i++) {
+			String code = tableHuff.getCode(data[i] & 0xff);
+			lens[i] = code.length();
+			codes[i] = Integer.parseInt(code, 2);
+		}
+		direct = ByteBuffer.allocateDirect(data.length);
+		direct.put(data).flip();
+		packed = ByteBuffer.allocateDirect(Huff.maxCompressedLength(data.length));
+		packedReady = ByteBuffer.allocateDirect(Huff.maxCompressedLength(data.length));
+		new Huff().compress(direct.duplicate(), packedReady);
+		packedReady.flip();
+		unpacked = ByteBuffer.allocateDirect(data.length);
+	}
+
+	/**
+	 * generate a corpus by name
+	 */
+	static byte[] generate(String corpus, int size, Random rnd) {
+		switch(corpus) {
+		case "uniform":
+			return uniform(size, rnd);
+		case "zipfian":
+			return zipfian(size, rnd);
+		case "text":
+			return HuffDecoderBenchmark.textLike(size, rnd);
+		case "repetitive":
+			return repetitive(size, rnd);
+		default:
+			throw new IllegalArgumentException("unknown corpus " + corpus);
+		}
+	}
+
+	@Override
+	public long countAll() throws IOException {
+		return new CharCounter().countAll(new ByteArrayInputStream(data));
+	}
+
+	@Override
+	public Object makeHuffTree() {
+		return new Huff().makeHuffTree(counts);
+	}
+
+	@Override
+	public Object huffmanLengths() {
+		return CanonicalCode.huffmanLengths(weights);
+	}
+
+	@Override
+	public Object makeTable() {
+		return tableHuff.makeTable();
+	}
+
+	@Override
+	public long write() throws IOException {
+		return new Huff().write(data, 0, data.length, new BitOutputStreamBenchmark.NullOutputStream(), true);
+	}
+
+	@Override
+	public long uncompress() throws IOException {
+		return new Huff().uncompress(new ByteArrayInputStream(compressed), new BitOutputStreamBenchmark.NullOutputStream());
+	}
+
+	@Override
+	public long compressDirect() {
+		direct.rewind();
+		packed.clear();
+		return new Huff().compress(direct, packed);
+	}
+
+	@Override
+	public long decompressDirect() throws IOException {
+		packedReady.rewind();
+		unpacked.clear();
+		return new Huff().decompress(packedReady, unpacked);
+	}
+
+	/**
+	 * the decode loop as it was before decoding was batched: every byte is
+	 * written with <code>write(BITS_PER_WORD, element)</code> and printed
+	 * with <code>println</code>, here to a discarding stream so that only
+	 * the cost of the calls is measured and not that of a console
+	 */
+	@Override
+	public long uncompressPerByte() throws IOException {
+		if(ByteBuffer.wrap(compressed).getInt() != MAGIC_NUMBER) {
+			throw new IOException("corpus is not in the tree format");
+		}
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(new BitOutputStreamBenchmark.NullOutputStream(), true));
+		try {
+			BitInputStream in = new BufferedBitInputStream(new ByteArrayInputStream(compressed));
+			HuffDecoder decoder = new HuffDecoder(new Huff().readHeader(in));
+			BitOutputStream out = new BufferedBitOutputStream(new BitOutputStreamBenchmark.NullOutputStream());
+			long n = 0;
+			int element;
+			while((element = decoder.decode(in)) != PSEUDO_EOF) {
+				out.write(BITS_PER_WORD, element);
+				System.out.println((char)element);
+				n++;
+			}
+			out.close();
+			return n;
+		} finally {
+			System.setOut(console);
+		}
+	}
+
+	@Override
+	public long bitOutputWrite() {
+		return writeCodes(new BitOutputStream(new BitOutputStreamBenchmark.NullOutputStream()));
+	}
+
+	@Override
+	public long bufferedBitOutputWrite() {
+		return writeCodes(new BufferedBitOutputStream(new BitOutputStreamBenchmark.NullOutputStream()));
+	}
+
+	@Override
+	public long bitInputRead() throws IOException {
+		return readCodes(new BitInputStream(new ByteArrayInputStream(compressed)));
+	}
+
+	@Override
+	public long bufferedBitInputRead() throws IOException {
+		return readCodes(new BufferedBitInputStream(new ByteArrayInputStream(compressed)));
+	}
+
+	private long writeCodes(BitOutputStream out) {
+		for(int i = 0; i < lens.length; i++) {
+			out.write(lens[i], codes[i]);
+		}
+		out.close();
+		return lens.length;
+	}
+
+	/**
+	 * read bits in the same pieces they were written in, the header is
+	 * read as well but this does not matter for the timing
+	 */
+	private long readCodes(BitInputStream in) throws IOException {
+		long sum = 0;
+		for(int i = 0; i < lens.length; i++) {
+			sum += in.read(lens[i]);
+		}
+		in.close();
+		return sum;
+	}
+
+	/**
+	 * every byte value equally likely, nothing to gain from compression
+	 */
+	static byte[] uniform(int size, Random rnd) {
+		byte[] data = new byte[size];
+		rnd.nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * byte values with Zipf-distributed frequencies, the k-th most common
+	 * one is k times less likely than the most common one
+	 */
+	static byte[] zipfian(int size, Random rnd) {
+		double[] cumulative = new double[ALPH_SIZE];
+		double sum = 0;
+		for(int k = 0; k < ALPH_SIZE; k++) {
+			sum += 1.0 / (k + 1);
+			cumulative[k] = sum;
+		}
+		byte[] data = new byte[size];
+		for(int i = 0; i < size; i++) {
+			double x = rnd.nextDouble() * sum;
+			int lo = 0;
+			int hi = ALPH_SIZE - 1;
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(cumulative[mid] < x) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			data[i] = (byte)lo;
+		}
+		return data;
+	}
+
+	/**
+	 * a short phrase over and over with an occasional changed byte
+	 */
+	static byte[] repetitive(int size, Random rnd) {
+		byte[] phrase = "the quick brown fox jumps over the lazy dog. ".getBytes();
+		byte[] data = new byte[size];
+		for(int i = 0; i < size; i++) {
+			data[i] = rnd.nextInt(1000) == 0 ? (byte)rnd.nextInt(ALPH_SIZE) : phrase[i % phrase.length];
+		}
+		return data;
+	}
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stages that work on the 257 counts or the tree, not on the input, so
+ * their cost does not grow with the corpus. The score is the time per
+ * call, the corpus only decides the shape of the counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodeBuildBenchmark {
+
+    @Param({"uniform", "zipfian", "text", "repetitive"})
+    public String corpus;
+
+    private Codec codec;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = Codec.load().prepare(corpus, ThroughputBenchmark.SIZE);
+    }
+
+    @Benchmark
+    public Object makeHuffTree() {
+        return codec.makeHuffTree();
+    }
+
+    @Benchmark
+    public Object huffmanLengths() {
+        return codec.huffmanLengths();
+    }
+
+    @Benchmark
+    public Object makeTable() {
+        return codec.makeTable();
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.io.IOException;
+
+/**
+ * The stages of compression and decompression the benchmarks measure, over
+ * one corpus. JMH does not accept benchmarks in the unnamed package and
+ * classes there cannot be imported, so the benchmarks call the codec
+ * through this interface, which <code>JmhCodec</code> in the unnamed
+ * package implements. The call goes through one implementation only, so
+ * it is inlined like a direct call.
+ */
+public interface Codec {
+
+    /**
+     * @param corpus is uniform, zipfian, text or repetitive
+     * @param size is the size of the corpus in bytes
+     * @return the codec with everything the stages need prepared
+     * @throws IOException if preparing fails
+     */
+    Codec prepare(String corpus, int size) throws IOException;
+
+    /** CharCounter.countAll over the corpus */
+    long countAll() throws IOException;
+
+    /** Huff.makeHuffTree from the counts of the corpus */
+    Object makeHuffTree();
+
+    /** CanonicalCode.huffmanLengths from the counts of the corpus */
+    Object huffmanLengths();
+
+    /** Huff.makeTable for the tree of the corpus */
+    Object makeTable();
+
+    /** Huff.write of the corpus to a discarding stream */
+    long write() throws IOException;
+
+    /** Huff.uncompress of the compressed corpus to a discarding stream */
+    long uncompress() throws IOException;
+
+    /** Huff.compress between direct buffers */
+    long compressDirect();
+
+    /** Huff.decompress between direct buffers */
+    long decompressDirect() throws IOException;
+
+    /** the decode loop before it was batched, one write and println per byte */
+    long uncompressPerByte() throws IOException;
+
+    /** BitOutputStream.write of the codes of the corpus */
+    long bitOutputWrite();
+
+    /** BufferedBitOutputStream.write of the codes of the corpus */
+    long bufferedBitOutputWrite();
+
+    /** BitInputStream.read of the codes of the corpus */
+    long bitInputRead() throws IOException;
+
+    /** BufferedBitInputStream.read of the codes of the corpus */
+    long bufferedBitInputRead() throws IOException;
+
+    /**
+     * @return a new codec, not prepared
+     */
+    static Codec load() {
+        try {
+            return (Codec) Class.forName("JmhCodec").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("could not load JmhCodec " + e);
+        }
+    }
+}
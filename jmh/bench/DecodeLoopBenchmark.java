@@ -0,0 +1,53 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The batched decode loop of <code>uncompress</code> against the loop it
+ * replaced, which wrote and printed every byte. Only corpora that compress,
+ * and so are written in the tree format, are used. One operation is one
+ * byte of the corpus, the score in ops/us is MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(ThroughputBenchmark.SIZE)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeLoopBenchmark {
+
+    @Param({"zipfian", "text", "repetitive"})
+    public String corpus;
+
+    private Codec codec;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = Codec.load().prepare(corpus, ThroughputBenchmark.SIZE);
+    }
+
+    @Benchmark
+    public long batched() throws IOException {
+        return codec.uncompress();
+    }
+
+    @Benchmark
+    public long perByte() throws IOException {
+        return codec.uncompressPerByte();
+    }
+}
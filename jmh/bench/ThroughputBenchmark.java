@@ -0,0 +1,93 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Stages that go over the whole corpus. One operation is one byte of the
+ * corpus, so the score in ops/us is the throughput in MB/s. Run with
+ * <code>-prof gc</code> for the allocation rate and bytes allocated per
+ * byte of input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(ThroughputBenchmark.SIZE)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThroughputBenchmark {
+
+    /**
+     * Size of every corpus in bytes.
+     */
+    public static final int SIZE = 4 << 20;
+
+    @Param({"uniform", "zipfian", "text", "repetitive"})
+    public String corpus;
+
+    private Codec codec;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = Codec.load().prepare(corpus, SIZE);
+    }
+
+    @Benchmark
+    public long countAll() throws IOException {
+        return codec.countAll();
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        return codec.write();
+    }
+
+    @Benchmark
+    public long uncompress() throws IOException {
+        return codec.uncompress();
+    }
+
+    @Benchmark
+    public long compressDirect() {
+        return codec.compressDirect();
+    }
+
+    @Benchmark
+    public long decompressDirect() throws IOException {
+        return codec.decompressDirect();
+    }
+
+    @Benchmark
+    public long bitOutputStreamWrite() {
+        return codec.bitOutputWrite();
+    }
+
+    @Benchmark
+    public long bufferedBitOutputStreamWrite() {
+        return codec.bufferedBitOutputWrite();
+    }
+
+    @Benchmark
+    public long bitInputStreamRead() throws IOException {
+        return codec.bitInputRead();
+    }
+
+    @Benchmark
+    public long bufferedBitInputStreamRead() throws IOException {
+        return codec.bufferedBitInputRead();
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Adaptive Huffman coding (algorithm FGK). Encoder and decoder start from
+ * the same tree holding only the not-yet-transmitted (NYT) node and update
+ * it after every chunk in the same way, so no counting pass and no code
+ * table are needed and every chunk can be emitted as soon as it is read.
+ * A chunk seen for the first time is sent as the code of the NYT node
+ * followed by the chunk in 9 bits, the data ends with PSEUDO_EOF.
+ * <P>
+ * The data starts with ADAPTIVE_MAGIC_NUMBER, which is how
+ * <code>Huff.uncompress</code> tells it from the other formats.
+ * <P>
+ * The tree lives in arrays indexed by node number. Nodes are numbered so
+ * that weights never decrease with the number and the root has the highest
+ * number, which is the sibling property the update relies on.
+ */
+public class AdaptiveHuff implements IHuffModel {
+
+	private static final int SYMBOLS = ALPH_SIZE + 1;
+	private static final int NODES = 2 * SYMBOLS + 1;
+	private static final int ROOT = NODES - 1;
+	private static final int NONE = -1;
+	private static final int INTERNAL = -2;
+	private static final int NYT = -3;
+	private static final int SYMBOL_BITS = 9;
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	private int[] weight;
+	private int[] parent;
+	private int[] left;
+	private int[] right;
+	//chunk of a leaf, INTERNAL or NYT
+	private int[] symbol;
+	//node of every chunk, NONE if not seen yet
+	private int[] leaf;
+	private int nyt;
+	//bits of the path from a leaf to the root, leaf end first
+	private int[] path;
+
+	/**
+	 * class Constructor
+	 */
+	public AdaptiveHuff() {
+		weight = new int[NODES];
+		parent = new int[NODES];
+		left = new int[NODES];
+		right = new int[NODES];
+		symbol = new int[NODES];
+		leaf = new int[SYMBOLS];
+		path = new int[NODES];
+		reset();
+	}
+
+	/**
+	 * start over from the tree holding only the NYT node
+	 */
+	private void reset() {
+		Arrays.fill(leaf, NONE);
+		nyt = ROOT;
+		weight[ROOT] = 0;
+		parent[ROOT] = NONE;
+		left[ROOT] = right[ROOT] = NONE;
+		symbol[ROOT] = NYT;
+	}
+
+	/**
+	 * Write a compressed version of the input file. If force is false and
+	 * the result is not smaller than the input, the output file is removed.
+	 */
+	@Override
+	public int write(String inFile, String outFile, boolean force) {
+		if(inFile == null || outFile == null || inFile.length() == 0 || outFile.length() == 0) {
+			throw new IllegalArgumentException();
+		}
+		long inputSize = new File(inFile).length();
+		long outputSize = 0;
+		try (InputStream in = new FileInputStream(inFile);
+				OutputStream out = new FileOutputStream(outFile)) {
+			outputSize = write(in, out);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if(!force && outputSize >= inputSize * BITS_PER_WORD) {
+			new File(outFile).delete();
+		}
+		return Huff.saturate(outputSize);
+	}
+
+	/**
+	 * Compress a stream. Whatever one read from <code>in</code> returns is
+	 * encoded and flushed to <code>out</code> before the next read, so the
+	 * output never waits for more input than is available.
+	 * @param in is the stream to be compressed, it is read to the end
+	 * @param out is where the compressed data is written, it is flushed but not closed
+	 * @return the size of the compressed data in bits
+	 * @throws IOException if reading or writing fails
+	 */
+	public long write(InputStream in, OutputStream out) throws IOException {
+		reset();
+		BufferedBitOutputStream bits = new BufferedBitOutputStream(out);
+		bits.write(BITS_PER_INT, ADAPTIVE_MAGIC_NUMBER);
+		long size = BITS_PER_INT;
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int n;
+		while((n = in.read(chunk)) != -1) {
+			for(int i = 0; i < n; i++) {
+				size += encode(chunk[i] & 0xff, bits);
+			}
+			//only whole bytes go out, the rest waits for the next chunk
+			bits.flushBytes();
+		}
+		size += encode(PSEUDO_EOF, bits);
+		bits.flush();
+		return size;
+	}
+
+	/**
+	 * Uncompress a file written by <code>write</code>.
+	 */
+	@Override
+	public int uncompress(String inFile, String outFile) {
+		long outSize = 0;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(inFile), CHUNK_SIZE);
+				OutputStream out = new FileOutputStream(outFile)) {
+			outSize = uncompress(in, out);
+		} catch (IOException e) {
+			System.out.println("Uncompressing Error");
+		}
+		return Huff.saturate(outSize);
+	}
+
+	/**
+	 * Uncompress a stream written by <code>write</code>. The input is read
+	 * one byte at a time, never past what the decoded chunks need, and the
+	 * output is flushed whenever no more input is available right away.
+	 * @param in is the compressed stream
+	 * @param out is where the uncompressed bytes are written, it is not closed
+	 * @return the size of the uncompressed data in bits
+	 * @throws IOException if the data is not valid or reading/writing fails
+	 */
+	public long uncompress(InputStream in, OutputStream out) throws IOException {
+		BitInputStream bits = new BitInputStream(in);
+		if(bits.read(BITS_PER_INT) != ADAPTIVE_MAGIC_NUMBER) {
+			throw new IOException("magic number not right");
+		}
+		return decode(bits, out, in);
+	}
+
+	/**
+	 * decode everything after the magic number
+	 * @param source is asked how much input is available, may be null
+	 * @return the size of the uncompressed data in bits
+	 */
+	long decode(BitInputStream in, OutputStream out, InputStream source) throws IOException {
+		reset();
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int n = 0;
+		long outSize = 0;
+		int element;
+		while((element = decode(in)) != PSEUDO_EOF) {
+			chunk[n++] = (byte)element;
+			if(n == chunk.length || (source != null && source.available() == 0)) {
+				out.write(chunk, 0, n);
+				out.flush();
+				outSize += n * BITS_PER_WORD;
+				n = 0;
+			}
+		}
+		out.write(chunk, 0, n);
+		out.flush();
+		return outSize + n * BITS_PER_WORD;
+	}
+
+	/**
+	 * write the code of one chunk and update the tree
+	 * @return the number of bits written
+	 */
+	private int encode(int ch, BufferedBitOutputStream out) {
+		int node = leaf[ch];
+		int size = writePath(node == NONE ? nyt : node, out);
+		if(node == NONE) {
+			out.writeBits(SYMBOL_BITS, ch);
+			size += SYMBOL_BITS;
+		}
+		update(ch);
+		return size;
+	}
+
+	/**
+	 * write the path from the root to a node, 0 for left and 1 for right
+	 * @return the number of bits written
+	 */
+	private int writePath(int node, BufferedBitOutputStream out) {
+		int len = 0;
+		while(node != ROOT) {
+			int p = parent[node];
+			path[len++] = right[p] == node ? 1 : 0;
+			node = p;
+		}
+		long bits = 0;
+		int count = 0;
+		for(int i = len - 1; i >= 0; i--) {
+			bits = (bits << 1) | path[i];
+			if(++count == BufferedBitOutputStream.MAX_BITS) {
+				out.writeBits(count, bits);
+				bits = 0;
+				count = 0;
+			}
+		}
+		out.writeBits(count, bits);
+		return len;
+	}
+
+	/**
+	 * read one code and update the tree
+	 * @return the chunk, PSEUDO_EOF included
+	 */
+	private int decode(BitInputStream in) throws IOException {
+		int node = ROOT;
+		while(symbol[node] == INTERNAL) {
+			int bit = in.read(1);
+			if(bit == -1) {
+				throw new IOException("unexpected end of input");
+			}
+			node = bit == 0 ? left[node] : right[node];
+		}
+		int ch = symbol[node];
+		if(ch == NYT) {
+			ch = in.read(SYMBOL_BITS);
+			if(ch < 0 || ch > PSEUDO_EOF || leaf[ch] != NONE) {
+				throw new IOException("invalid chunk in input");
+			}
+		}
+		update(ch);
+		return ch;
+	}
+
+	/**
+	 * count one more occurrence of a chunk, adding it to the tree first if
+	 * it is new, and restore the sibling property on the way to the root
+	 */
+	private void update(int ch) {
+		int node = leaf[ch];
+		if(node == NONE) {
+			//the NYT node becomes an internal node with the new leaf on the
+			//right and the new NYT node on the left
+			int p = nyt;
+			node = p - 1;
+			nyt = p - 2;
+			symbol[p] = INTERNAL;
+			left[p] = nyt;
+			right[p] = node;
+			symbol[node] = ch;
+			weight[node] = 0;
+			parent[node] = p;
+			left[node] = right[node] = NONE;
+			leaf[ch] = node;
+			symbol[nyt] = NYT;
+			weight[nyt] = 0;
+			parent[nyt] = p;
+			left[nyt] = right[nyt] = NONE;
+		}
+		while(node != NONE) {
+			//highest numbered node of the same weight
+			int leader = node;
+			while(leader < ROOT && weight[leader + 1] == weight[node]) {
+				leader++;
+			}
+			if(leader != node && leader != parent[node]) {
+				swap(node, leader);
+				node = leader;
+			}
+			weight[node]++;
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * exchange the subtrees at two node numbers, they keep their parents'
+	 * links since those refer to the numbers
+	 */
+	private void swap(int a, int b) {
+		int tmp = symbol[a];
+		symbol[a] = symbol[b];
+		symbol[b] = tmp;
+		tmp = left[a];
+		left[a] = left[b];
+		left[b] = tmp;
+		tmp = right[a];
+		right[a] = right[b];
+		right[b] = tmp;
+		tmp = weight[a];
+		weight[a] = weight[b];
+		weight[b] = tmp;
+		relink(a);
+		relink(b);
+	}
+
+	/**
+	 * point the children or the chunk of a node back at it
+	 */
+	private void relink(int node) {
+		if(symbol[node] == INTERNAL) {
+			parent[left[node]] = node;
+			parent[right[node]] = node;
+		}
+		else if(symbol[node] == NYT) {
+			nyt = node;
+		}
+		else {
+			leaf[symbol[node]] = node;
+		}
+	}
+}
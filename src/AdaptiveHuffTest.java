@@ -0,0 +1,88 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the adaptive Huffman model.
+ */
+public class AdaptiveHuffTest {
+
+	/**
+	 * compress skewed and uniform data and test that both AdaptiveHuff and
+	 * Huff uncompress it back to the original bytes
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		Random rnd = new Random(9);
+		for(int kind = 0; kind < 2; kind++) {
+			byte[] data = new byte[200000];
+			for(int i = 0; i < data.length; i++) {
+				data[i] = (byte)(kind == 0 ? Math.min(255, (int)(-Math.log(rnd.nextDouble()) * 8)) : rnd.nextInt(256));
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long size = new AdaptiveHuff().write(new ByteArrayInputStream(data), out);
+			assertEquals((size + 7) / 8, out.size());
+			//close to the static code, which also has to send its table
+			ByteArrayOutputStream fixed = new ByteArrayOutputStream();
+			new Huff().write(data, 0, data.length, fixed, true);
+			assertTrue(out.size() < fixed.size() * 1.01);
+			ByteArrayOutputStream back = new ByteArrayOutputStream();
+			assertEquals(data.length * 8L, new AdaptiveHuff().uncompress(new ByteArrayInputStream(out.toByteArray()), back));
+			assertArrayEquals(data, back.toByteArray());
+			back.reset();
+			assertEquals(data.length * 8, new Huff().uncompress(new ByteArrayInputStream(out.toByteArray()), back));
+			assertArrayEquals(data, back.toByteArray());
+		}
+	}
+
+	/**
+	 * test that the code of the first chunks is written before the rest of
+	 * the input is read
+	 */
+	@Test
+	public final void testLowLatency() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputStream in = new InputStream() {
+			private int reads;
+
+			@Override
+			public int read() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if(reads++ == 0) {
+					b[off] = 'a';
+					b[off + 1] = 'b';
+					return 2;
+				}
+				//the magic number and two new chunks are out already
+				assertTrue(out.size() >= 4 + 2);
+				return -1;
+			}
+		};
+		new AdaptiveHuff().write(in, out);
+		ByteArrayOutputStream back = new ByteArrayOutputStream();
+		new AdaptiveHuff().uncompress(new ByteArrayInputStream(out.toByteArray()), back);
+		assertEquals("ab", back.toString("UTF-8"));
+	}
+
+	/**
+	 * test that an empty input uncompresses to nothing
+	 */
+	@Test
+	public final void testEmpty() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new AdaptiveHuff().write(new ByteArrayInputStream(new byte[0]), out);
+		ByteArrayOutputStream back = new ByteArrayOutputStream();
+		assertEquals(0, new AdaptiveHuff().uncompress(new ByteArrayInputStream(out.toByteArray()), back));
+		assertEquals(0, back.size());
+	}
+}
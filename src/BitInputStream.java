@@ -157,6 +157,16 @@ public class BitInputStream extends InputStream
         return retval;
     }
 
+    /**
+     * Returns the number of bits already taken from the underlying stream
+     * but not yet returned by <code>read</code>, these are fewer than a byte.
+     * @return the number of buffered bits
+     */
+    int bufferedBits()
+    {
+        return myBitCount;
+    }
+
     /**
      * Required by classes extending InputStream, returns
      * the next byte from this stream as an int value.
@@ -0,0 +1,225 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the bit-at-a-time streams.
+ */
+public class BitStreamTest {
+
+	/**
+	 * write the same random codes to a BitOutputStream and a
+	 * BufferedBitOutputStream and test that the bytes are identical
+	 */
+	@Test
+	public final void testBufferedBitOutputStream() {
+		Random rnd = new Random(7);
+		ByteArrayOutputStream a = new ByteArrayOutputStream();
+		ByteArrayOutputStream b = new ByteArrayOutputStream();
+		BitOutputStream slow = new BitOutputStream(a);
+		//small buffer so that it is drained many times
+		BitOutputStream fast = new BufferedBitOutputStream(b, 16);
+		for(int i = 0; i < 10000; i++) {
+			int len = 1 + rnd.nextInt(31);
+			int value = rnd.nextInt();
+			slow.write(len, value);
+			fast.write(len, value);
+		}
+		slow.close();
+		fast.close();
+		assertArrayEquals(a.toByteArray(), b.toByteArray());
+	}
+
+	/**
+	 * test that writeBits accepts up to 57 bits and bulk byte writes
+	 * keep their place in the bit stream
+	 */
+	@Test
+	public final void testWriteBits() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BufferedBitOutputStream bits = new BufferedBitOutputStream(out);
+		bits.writeBits(7, 0);
+		bits.writeBits(BufferedBitOutputStream.MAX_BITS, (1L << 56) | 0xABL);
+		bits.write(new byte[] {1, 2, 3}, 0, 3);
+		bits.writeBits(4, 0xF);
+		bits.write(new byte[] {(byte)0x80}, 0, 1);
+		bits.close();
+		assertArrayEquals(new byte[] {1, 0, 0, 0, 0, 0, 0, (byte)0xAB, 1, 2, 3, (byte)0xF8, 0},
+				out.toByteArray());
+	}
+
+	/**
+	 * read the same random bit counts from a BitInputStream and a
+	 * BufferedBitInputStream and test that the values are identical
+	 */
+	@Test
+	public final void testBufferedBitInputStream() throws IOException {
+		Random rnd = new Random(11);
+		byte[] data = new byte[5000];
+		rnd.nextBytes(data);
+		BitInputStream slow = new BitInputStream(new ByteArrayInputStream(data));
+		//small buffer so that it is refilled many times
+		BufferedBitInputStream fast = new BufferedBitInputStream(new ByteArrayInputStream(data), 8);
+		int left = data.length * 8;
+		while(left > 0) {
+			int len = Math.min(left, 1 + rnd.nextInt(31));
+			int expected = slow.read(len);
+			assertEquals(expected, (int)fast.peekBits(len));
+			assertEquals(expected, fast.read(len));
+			left -= len;
+		}
+		assertEquals(-1, fast.read(1));
+		assertFalse(fast.overrun());
+	}
+
+	/**
+	 * test that bits past the end of input are zero and consuming them
+	 * is reported by overrun
+	 */
+	@Test
+	public final void testOverrun() throws IOException {
+		BufferedBitInputStream in = new BufferedBitInputStream(new ByteArrayInputStream(new byte[] {(byte)0xA5}));
+		assertEquals(0xA500L, in.peekBits(16));
+		assertEquals(0xAL, in.readBits(4));
+		assertEquals(0x5L, in.readBits(4));
+		assertFalse(in.overrun());
+		in.skipBits(1);
+		assertTrue(in.overrun());
+	}
+
+	/**
+	 * write random codes to a file channel and read them back from a
+	 * mapping of the file, test that the bits are the same
+	 */
+	@Test
+	public final void testChannelAndMapping() throws IOException {
+		Random rnd = new Random(11);
+		int[] lens = new int[100000];
+		int[] values = new int[lens.length];
+		File file = File.createTempFile("bits", ".bin");
+		file.deleteOnExit();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+		//small buffer so that it is drained many times
+		BufferedBitOutputStream out = new BufferedBitOutputStream(channel, 64);
+		for(int i = 0; i < lens.length; i++) {
+			lens[i] = 1 + rnd.nextInt(31);
+			values[i] = rnd.nextInt() & ((1 << lens[i]) - 1);
+			out.write(lens[i], values[i]);
+		}
+		out.write(new byte[100], 0, 100);
+		out.close();
+		ByteBuffer mapped;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		channel.close();
+		BufferedBitInputStream in = new BufferedBitInputStream(mapped);
+		for(int i = 0; i < lens.length; i++) {
+			assertEquals(values[i], in.read(lens[i]));
+		}
+		for(int i = 0; i < 100; i++) {
+			assertEquals(0, in.read(8));
+		}
+		file.delete();
+	}
+
+	/**
+	 * read a file larger than the map window, so that it is mapped in
+	 * several windows whose boundaries are not word-aligned, and test the
+	 * bits against a BitInputStream over the same bytes
+	 */
+	@Test
+	public final void testMapWindows() throws IOException {
+		Random rnd = new Random(13);
+		byte[] data = new byte[(int)BufferedBitInputStream.MAP_THRESHOLD + 1000];
+		rnd.nextBytes(data);
+		File file = File.createTempFile("bits", ".bin");
+		try {
+			Files.write(file.toPath(), data);
+			BufferedBitInputStream in = new BufferedBitInputStream(file, (1 << 20) + 5);
+			BitInputStream ref = new BitInputStream(new ByteArrayInputStream(data));
+			long bits = (long)data.length * 8;
+			while(bits >= 31) {
+				int len = 1 + rnd.nextInt(31);
+				assertEquals(ref.read(len), in.read(len));
+				bits -= len;
+			}
+			assertEquals(-1, in.read(31));
+			if(bits > 0) {
+				assertEquals(ref.read((int)bits), in.read((int)bits));
+			}
+			assertEquals(data.length, in.bytesConsumed());
+			in.close();
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * read bytes in bulk at a byte boundary and off it, from a small buffer
+	 * so that it is refilled, and test them against the input
+	 */
+	@Test
+	public final void testReadBytes() throws IOException {
+		byte[] data = new byte[5000];
+		new Random(17).nextBytes(data);
+		BufferedBitInputStream in = new BufferedBitInputStream(new ByteArrayInputStream(data), 64);
+		assertEquals(data[0] & 0xff, in.read(8));
+		byte[] got = new byte[3000];
+		assertEquals(got.length, in.read(got, 0, got.length));
+		for(int i = 0; i < got.length; i++) {
+			assertEquals(data[1 + i], got[i]);
+		}
+		//3 bits off the boundary, every byte is made of two input bytes
+		assertEquals((data[3001] & 0xff) >>> 5, in.read(3));
+		got = new byte[10];
+		assertEquals(got.length, in.read(got, 0, got.length));
+		for(int i = 0; i < got.length; i++) {
+			assertEquals((byte)((data[3001 + i] << 3) | ((data[3002 + i] & 0xff) >>> 5)), got[i]);
+		}
+		assertEquals((data[3011] & 0x1f), in.read(5));
+		got = new byte[5000];
+		assertEquals(data.length - 3012, in.read(got, 0, got.length));
+		assertEquals(data[3012], got[0]);
+		assertEquals(data[data.length - 1], got[data.length - 3013]);
+		assertEquals(-1, in.read(got, 0, got.length));
+	}
+
+	/**
+	 * read bits after a bulk read with the default buffer, the register
+	 * holds bits of bytes the bulk read copies from the buffer
+	 */
+	@Test
+	public final void testReadAfterReadBytes() throws IOException {
+		byte[] data = new byte[100];
+		for(int i = 0; i < data.length; i++) {
+			data[i] = (byte)i;
+		}
+		BufferedBitInputStream in = new BufferedBitInputStream(new ByteArrayInputStream(data));
+		assertEquals(0, in.read(8));
+		byte[] got = new byte[10];
+		assertEquals(got.length, in.read(got, 0, got.length));
+		for(int i = 0; i < got.length; i++) {
+			assertEquals(i + 1, got[i]);
+		}
+		for(int i = 11; i < 20; i++) {
+			assertEquals(i, in.read(8));
+		}
+		assertEquals(20 >>> 4, in.read(4));
+		assertEquals(20 & 0xf, in.read(4));
+		got = new byte[100];
+		assertEquals(79, in.read(got, 0, got.length));
+		assertEquals(21, got[0]);
+		assertEquals(99, got[78]);
+		assertEquals(-1, in.read(8));
+	}
+}
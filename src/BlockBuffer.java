@@ -0,0 +1,144 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the bytes of a stream so that they can be read again after the
+ * stream itself is gone, e.g., to encode data from a pipe once its counts
+ * are known. Bytes are held in memory in blocks of BLOCK_SIZE until the
+ * memory limit is reached, the rest goes to a temporary spill file that
+ * is deleted on <code>close</code>.
+ */
+public class BlockBuffer {
+
+	/**
+	 * Size of one in-memory block.
+	 */
+	public static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Default number of bytes kept in memory before spilling to disk.
+	 */
+	public static final long DEFAULT_MEMORY_LIMIT = 64L << 20;
+
+	private List<byte[]> blocks;
+	private int lastUsed;
+	private long size;
+	private long memoryLimit;
+	private File spillFile;
+	private OutputStream spill;
+
+	/**
+	 * class Constructor with the default memory limit
+	 */
+	public BlockBuffer() {
+		this(DEFAULT_MEMORY_LIMIT);
+	}
+
+	/**
+	 * class Constructor
+	 * @param memoryLimit is the number of bytes kept in memory before spilling
+	 */
+	public BlockBuffer(long memoryLimit) {
+		if(memoryLimit < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.memoryLimit = memoryLimit;
+		blocks = new ArrayList<byte[]>();
+		lastUsed = BLOCK_SIZE;
+	}
+
+	/**
+	 * Append bytes to the buffer.
+	 * @param b is the source of the bytes
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @throws IOException if writing the spill file fails
+	 */
+	public void write(byte[] b, int off, int len) throws IOException {
+		size += len;
+		while(len > 0 && spill == null) {
+			if(lastUsed == BLOCK_SIZE) {
+				if((long)(blocks.size() + 1) * BLOCK_SIZE > memoryLimit) {
+					//out of memory budget, everything else goes to disk
+					//close deletes it, deleteOnExit would keep every path until exit
+					spillFile = File.createTempFile("huff", ".spill");
+					try {
+						spill = new BufferedOutputStream(new FileOutputStream(spillFile), BLOCK_SIZE);
+					} catch (IOException e) {
+						spillFile.delete();
+						throw e;
+					}
+					break;
+				}
+				blocks.add(new byte[BLOCK_SIZE]);
+				lastUsed = 0;
+			}
+			int n = Math.min(len, BLOCK_SIZE - lastUsed);
+			System.arraycopy(b, off, blocks.get(blocks.size() - 1), lastUsed, n);
+			lastUsed += n;
+			off += n;
+			len -= n;
+		}
+		if(len > 0) {
+			spill.write(b, off, len);
+		}
+	}
+
+	/**
+	 * @return the number of bytes written so far
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return true if part of the bytes went to the spill file
+	 */
+	public boolean spilled() {
+		return spill != null;
+	}
+
+	/**
+	 * Open a stream over all bytes written so far, in order.
+	 * @return the stream
+	 * @throws IOException if the spill file cannot be read
+	 */
+	public InputStream openInputStream() throws IOException {
+		List<InputStream> parts = new ArrayList<InputStream>();
+		for(int i = 0; i < blocks.size(); i++) {
+			int len = i == blocks.size() - 1 ? lastUsed : BLOCK_SIZE;
+			parts.add(new ByteArrayInputStream(blocks.get(i), 0, len));
+		}
+		if(spill != null) {
+			spill.flush();
+			parts.add(new FileInputStream(spillFile));
+		}
+		return new SequenceInputStream(Collections.enumeration(parts));
+	}
+
+	/**
+	 * Release the memory and delete the spill file.
+	 */
+	public void close() {
+		blocks.clear();
+		if(spill != null) {
+			try {
+				spill.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			spillFile.delete();
+			spill = null;
+		}
+	}
+}
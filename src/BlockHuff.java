@@ -0,0 +1,397 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Model that splits the input into independent blocks and compresses them
+ * in parallel. Every block is a complete canonical Huffman stream of its
+ * own, as written by <code>Huff.write</code>, so blocks can be compressed
+ * and decompressed on different threads.
+ * <P>
+ * File layout, all ints are 32 bits and all longs 64 bits, big-endian:
+ * <pre>
+ * FRAMED_MAGIC_NUMBER, block size
+ * for every block: compressed length in bytes, uncompressed length in bytes, compressed block
+ * 0 (end of blocks)
+ * block index: number of blocks, then for every block the file offset of
+ * its compressed length and the offset of its first byte in the uncompressed data
+ * file offset of the block index (long), FRAMED_MAGIC_NUMBER
+ * </pre>
+ * The index at the end lets <code>uncompress</code> decode the blocks on
+ * worker threads and write every one straight to its place in the output
+ * file. Files without the index are decoded one block after the other.
+ */
+public class BlockHuff implements IHuffModel {
+
+	/**
+	 * Default number of input bytes per block.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	private int blockSize;
+	private ForkJoinPool pool;
+
+	/**
+	 * class Constructor with the default block size, blocks are compressed
+	 * on the common fork/join pool
+	 */
+	public BlockHuff() {
+		this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * class Constructor
+	 * @param blockSize is the number of input bytes per block
+	 * @param pool runs the block compression tasks
+	 */
+	public BlockHuff(int blockSize, ForkJoinPool pool) {
+		if(blockSize <= 0 || pool == null) {
+			throw new IllegalArgumentException();
+		}
+		this.blockSize = blockSize;
+		this.pool = pool;
+	}
+
+	/**
+	 * Write a compressed version of the input file as a sequence of blocks
+	 * compressed in parallel and written in order. If force is false and the
+	 * result is not smaller than the input, the output file is removed.
+	 * @throws RuntimeException if reading, compressing or writing fails, the
+	 * blocks still pending are cancelled and the output file is removed
+	 */
+	@Override
+	public int write(String inFile, String outFile, boolean force) {
+		if(inFile == null || outFile == null || inFile.length() == 0 || outFile.length() == 0) {
+			throw new IllegalArgumentException();
+		}
+		long inputSize = 0;
+		long outputSize = 0;
+		//file offset and uncompressed offset of every block
+		List<long[]> index = new ArrayList<long[]>();
+		//blocks in flight, bounded so that memory use does not grow with the file
+		Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+		boolean opened = false;
+		try (InputStream in = new FileInputStream(inFile);
+				DataOutputStream out = new DataOutputStream(
+						new BufferedOutputStream(new FileOutputStream(outFile), DEFAULT_BLOCK_SIZE))) {
+			opened = true;
+			out.writeInt(FRAMED_MAGIC_NUMBER);
+			out.writeInt(blockSize);
+			long offset = 2 * BITS_PER_INT / BITS_PER_WORD;
+			int written = 0;
+			int maxPending = 2 * pool.getParallelism();
+			byte[] block;
+			while((block = readBlock(in)) != null) {
+				index.add(new long[] {0, inputSize});
+				inputSize += block.length;
+				final byte[] data = block;
+				pending.add(pool.submit(() -> compressBlock(data)));
+				if(pending.size() >= maxPending) {
+					index.get(written++)[0] = offset;
+					offset += writeBlock(out, pending.poll());
+				}
+			}
+			while(!pending.isEmpty()) {
+				index.get(written++)[0] = offset;
+				offset += writeBlock(out, pending.poll());
+			}
+			outputSize = writeTrailer(out, index, offset) * BITS_PER_WORD;
+		} catch (IOException | RuntimeException e) {
+			//a file without its index is no use, nothing is left behind
+			for(Future<byte[]> block : pending) {
+				block.cancel(true);
+			}
+			if(opened) {
+				new File(outFile).delete();
+			}
+			throw new RuntimeException("could not write " + outFile + " " + e, e);
+		}
+		if(!force && outputSize >= inputSize * BITS_PER_WORD) {
+			new File(outFile).delete();
+		}
+		return Huff.saturate(outputSize);
+	}
+
+	/**
+	 * read the next block of input, shorter at the end of the input
+	 * @return the block, null at end of input
+	 */
+	private byte[] readBlock(InputStream in) throws IOException {
+		byte[] block = new byte[blockSize];
+		int len = 0;
+		int n;
+		while(len < blockSize && (n = in.read(block, len, blockSize - len)) != -1) {
+			len += n;
+		}
+		if(len == 0) {
+			return null;
+		}
+		if(len < blockSize) {
+			byte[] tmp = new byte[len];
+			System.arraycopy(block, 0, tmp, 0, len);
+			block = tmp;
+		}
+		return block;
+	}
+
+	/**
+	 * write the end mark and the block index after the last block
+	 * @param index holds the file offset and uncompressed offset of every block
+	 * @param offset is the file offset of the end mark
+	 * @return the size of the whole file in bytes
+	 */
+	static long writeTrailer(DataOutputStream out, List<long[]> index, long offset) throws IOException {
+		out.writeInt(0);
+		long indexOffset = offset + BITS_PER_INT / BITS_PER_WORD;
+		out.writeInt(index.size());
+		for(long[] entry : index) {
+			out.writeLong(entry[0]);
+			out.writeLong(entry[1]);
+		}
+		out.writeLong(indexOffset);
+		out.writeInt(FRAMED_MAGIC_NUMBER);
+		//blocks, end mark, index and its offset and magic number
+		return indexOffset + BITS_PER_INT / BITS_PER_WORD + 16L * index.size() + 12;
+	}
+
+	/**
+	 * compress one block with its own canonical code
+	 * @return the block header and the compressed block
+	 */
+	static byte[] compressBlock(byte[] block) throws IOException {
+		return compressBlock(block, 0, block.length);
+	}
+
+	/**
+	 * compress <code>len</code> bytes of an array as one block
+	 * @return the block header and the compressed block
+	 */
+	static byte[] compressBlock(byte[] block, int off, int len) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		//room for the compressed length, patched below
+		out.writeInt(0);
+		out.writeInt(len);
+		Huff huff = new Huff();
+		huff.setCanonical(true);
+		huff.write(block, off, len, out, true);
+		byte[] res = bytes.toByteArray();
+		int payload = res.length - 2 * BITS_PER_INT / BITS_PER_WORD;
+		res[0] = (byte)(payload >>> 24);
+		res[1] = (byte)(payload >>> 16);
+		res[2] = (byte)(payload >>> 8);
+		res[3] = (byte)payload;
+		return res;
+	}
+
+	/**
+	 * wait for a compressed block and write it
+	 * @return the number of bytes written
+	 */
+	private long writeBlock(DataOutputStream out, Future<byte[]> block) throws IOException {
+		byte[] res;
+		try {
+			res = block.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("block compression failed", e.getCause());
+		}
+		out.write(res);
+		return res.length;
+	}
+
+	/**
+	 * Uncompress a file written by <code>write</code>. Blocks are decoded in
+	 * parallel, each with its own decode table, and written to their place
+	 * in the output file with positional writes. Files without a block index
+	 * are decoded one block after the other.
+	 */
+	@Override
+	public int uncompress(String inFile, String outFile) {
+		long[][] index;
+		try (FileChannel in = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ)) {
+			index = readIndex(in);
+			if(index == null) {
+				return uncompressSequential(inFile, outFile);
+			}
+			try (FileChannel out = FileChannel.open(Paths.get(outFile), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				List<Future<Long>> tasks = new ArrayList<Future<Long>>();
+				for(long[] entry : index) {
+					tasks.add(pool.submit(() -> uncompressBlock(in, entry[0], out, entry[1])));
+				}
+				long outSize = 0;
+				try {
+					for(Future<Long> task : tasks) {
+						outSize += task.get();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while uncompressing", e);
+				} catch (ExecutionException e) {
+					throw new IOException("block decompression failed", e.getCause());
+				} finally {
+					for(Future<Long> task : tasks) {
+						task.cancel(false);
+					}
+				}
+				return Huff.saturate(outSize);
+			}
+		} catch (IOException e) {
+			System.out.println("Uncompressing Error");
+		}
+		return 0;
+	}
+
+	/**
+	 * read the block index from the end of the file
+	 * @return file offset and uncompressed offset of every block, null if
+	 * the file has no valid index
+	 */
+	private long[][] readIndex(FileChannel in) throws IOException {
+		long size = in.size();
+		int footer = 12;
+		if(size < 2 * BITS_PER_INT / BITS_PER_WORD + 4 + 4 + footer) {
+			return null;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(footer);
+		readFully(in, buf, size - footer);
+		long indexOffset = buf.getLong(0);
+		if(buf.getInt(8) != FRAMED_MAGIC_NUMBER || indexOffset < 0 || indexOffset > size - footer - 4) {
+			return null;
+		}
+		buf = ByteBuffer.allocate(4);
+		readFully(in, buf, indexOffset);
+		int count = buf.getInt(0);
+		if(count < 0 || indexOffset + 4 + 16L * count + footer != size) {
+			return null;
+		}
+		buf = ByteBuffer.allocate(16 * count);
+		readFully(in, buf, indexOffset + 4);
+		long[][] index = new long[count][];
+		for(int i = 0; i < count; i++) {
+			index[i] = new long[] {buf.getLong(16 * i), buf.getLong(16 * i + 8)};
+		}
+		return index;
+	}
+
+	/**
+	 * decode the block at <code>offset</code> into the output file at <code>outOffset</code>
+	 * @return the number of bits written
+	 */
+	private static long uncompressBlock(FileChannel in, long offset, FileChannel out, long outOffset)
+			throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(2 * BITS_PER_INT / BITS_PER_WORD);
+		readFully(in, header, offset);
+		int payload = header.getInt(0);
+		int rawLength = header.getInt(4);
+		if(payload <= 0) {
+			throw new IOException("bad block index");
+		}
+		ByteBuffer block = ByteBuffer.allocate(payload);
+		readFully(in, block, offset + header.capacity());
+		//the int bit count of uncompress saturates at 256 MB, the byte count does not
+		Huff huff = new Huff();
+		huff.uncompress(new ByteArrayInputStream(block.array()), new PositionalOutputStream(out, outOffset));
+		if(huff.uncompressedBytes() != rawLength) {
+			throw new IOException("block length does not match");
+		}
+		return (long)rawLength * BITS_PER_WORD;
+	}
+
+	/**
+	 * fill the buffer from the channel starting at the given position
+	 */
+	private static void readFully(FileChannel in, ByteBuffer buf, long position) throws IOException {
+		while(buf.hasRemaining()) {
+			int n = in.read(buf, position);
+			if(n == -1) {
+				throw new EOFException();
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Uncompress a file one block after the other.
+	 */
+	private int uncompressSequential(String inFile, String outFile) {
+		long outSize = 0;
+		try (DataInputStream in = new DataInputStream(
+						new BufferedInputStream(new FileInputStream(inFile), DEFAULT_BLOCK_SIZE));
+				BufferedOutputStream out = new BufferedOutputStream(
+						new FileOutputStream(outFile), DEFAULT_BLOCK_SIZE)) {
+			if(in.readInt() != FRAMED_MAGIC_NUMBER) {
+				throw new IOException("magic number not right");
+			}
+			in.readInt();
+			int payload;
+			while((payload = in.readInt()) != 0) {
+				int rawLength = in.readInt();
+				byte[] block = new byte[payload];
+				in.readFully(block);
+				Huff huff = new Huff();
+				huff.uncompress(new ByteArrayInputStream(block), out);
+				if(huff.uncompressedBytes() != rawLength) {
+					throw new IOException("block length does not match");
+				}
+				outSize += (long)rawLength * BITS_PER_WORD;
+			}
+		} catch (EOFException e) {
+			System.out.println("Uncompressing Error: unexpected end of input file");
+		} catch (IOException e) {
+			System.out.println("Uncompressing Error");
+		}
+		return Huff.saturate(outSize);
+	}
+
+	/**
+	 * Writes to a file channel from a fixed starting position, so several
+	 * threads can fill different parts of the same file.
+	 */
+	private static class PositionalOutputStream extends OutputStream {
+		private FileChannel channel;
+		private long position;
+
+		PositionalOutputStream(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+			while(buf.hasRemaining()) {
+				position += channel.write(buf, position);
+			}
+		}
+	}
+}
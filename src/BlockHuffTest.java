@@ -0,0 +1,115 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests for the block container written by BlockHuff.
+ */
+public class BlockHuffTest {
+
+	/**
+	 * compress a file in many small blocks and test that both BlockHuff and
+	 * Huff uncompress it back to the original bytes
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		File in = File.createTempFile("blockIn", ".txt");
+		File out = File.createTempFile("blockOut", ".hf");
+		File back = File.createTempFile("blockBack", ".txt");
+		try {
+			byte[] data = new byte[100000];
+			Random rnd = new Random(3);
+			for(int i = 0; i < data.length; i++) {
+				data[i] = (byte)('a' + rnd.nextInt(6));
+			}
+			Files.write(in.toPath(), data);
+			BlockHuff huff = new BlockHuff(4096, ForkJoinPool.commonPool());
+			int size = huff.write(in.getPath(), out.getPath(), false);
+			assertEquals(out.length() * 8, size);
+			assertEquals(data.length * 8, huff.uncompress(out.getPath(), back.getPath()));
+			assertArrayEquals(data, Files.readAllBytes(back.toPath()));
+			assertEquals(data.length * 8, new Huff().uncompress(out.getPath(), back.getPath()));
+			assertArrayEquals(data, Files.readAllBytes(back.toPath()));
+		} finally {
+			in.delete();
+			out.delete();
+			back.delete();
+		}
+	}
+
+	/**
+	 * test that without force no output is left when the blocks do not save space
+	 */
+	@Test
+	public final void testWriteUnforce() throws IOException {
+		File in = File.createTempFile("blockIn", ".txt");
+		File out = File.createTempFile("blockOut", ".hf");
+		try {
+			Files.write(in.toPath(), "teststring".getBytes("UTF-8"));
+			new BlockHuff().write(in.getPath(), out.getPath(), false);
+			assertFalse(out.exists());
+		} finally {
+			in.delete();
+			out.delete();
+		}
+	}
+
+	/**
+	 * cut the block index off a compressed file and test that it is still
+	 * uncompressed, one block after the other
+	 */
+	@Test
+	public final void testUncompressWithoutIndex() throws IOException {
+		File in = File.createTempFile("blockIn", ".txt");
+		File out = File.createTempFile("blockOut", ".hf");
+		File back = File.createTempFile("blockBack", ".txt");
+		try {
+			byte[] data = new byte[20000];
+			for(int i = 0; i < data.length; i++) {
+				data[i] = (byte)('a' + i % 7);
+			}
+			Files.write(in.toPath(), data);
+			BlockHuff huff = new BlockHuff(4096, ForkJoinPool.commonPool());
+			huff.write(in.getPath(), out.getPath(), true);
+			//5 blocks: count, 16 bytes per block, index offset and magic number
+			byte[] compressed = Files.readAllBytes(out.toPath());
+			byte[] noIndex = new byte[compressed.length - 4 - 5 * 16 - 12];
+			System.arraycopy(compressed, 0, noIndex, 0, noIndex.length);
+			Files.write(out.toPath(), noIndex);
+			assertEquals(data.length * 8, huff.uncompress(out.getPath(), back.getPath()));
+			assertArrayEquals(data, Files.readAllBytes(back.toPath()));
+		} finally {
+			in.delete();
+			out.delete();
+			back.delete();
+		}
+	}
+
+	/**
+	 * test that a write that fails part-way throws and leaves no output
+	 */
+	@Test
+	public final void testWriteFailure() throws IOException {
+		File in = File.createTempFile("blockIn", ".txt");
+		File out = File.createTempFile("blockOut", ".hf");
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			Files.write(in.toPath(), new byte[20000]);
+			//the header is written before the first block is rejected
+			pool.shutdown();
+			new BlockHuff(4096, pool).write(in.getPath(), out.getPath(), true);
+			fail("expected RuntimeException");
+		} catch (RuntimeException e) {
+			assertFalse(out.exists());
+		} finally {
+			in.delete();
+			out.delete();
+		}
+	}
+}
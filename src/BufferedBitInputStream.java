@@ -0,0 +1,444 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * High-throughput replacement for <code>BitInputStream</code>. Input is read
+ * in large chunks into an internal byte array and a 64-bit register is
+ * refilled from it eight bytes at a time. Besides the usual
+ * <code>read(int)</code> this class can look at upcoming bits without
+ * consuming them, with <code>peekBits</code>, <code>skipBits</code> and
+ * <code>readBits</code>, which is what table-driven decoding needs.
+ * <P>
+ * Past the end of the input the register is filled with zero bits, so the
+ * peek/skip calls never return -1 or throw in the common case. Clients
+ * check <code>overrun</code> once they are done to find out if any of the
+ * padding was consumed. Consuming far past the end throws an
+ * <code>IOException</code> on the next refill.
+ * <P>
+ * Since it is a <code>BitInputStream</code> it can be passed wherever one is
+ * expected, e.g., to <code>IHuffHeader.readHeader</code>. Like
+ * <code>BitInputStream</code> it can be reset only when constructed from a
+ * file. It reads ahead of the bits returned, so the underlying stream should
+ * not be used by anybody else.
+ * <P>
+ * Files of at least MAP_THRESHOLD bytes are memory-mapped instead of read,
+ * so the register is loaded straight from the mapping without any system
+ * call or copy. A mapping holds at most MAP_WINDOW_SIZE bytes, larger files
+ * are mapped one window after the other as the reading moves on. A
+ * <code>ByteBuffer</code> can be read the same way.
+ */
+public class BufferedBitInputStream extends BitInputStream
+{
+    /**
+     * The largest number of bits a single peek/skip/read accepts.
+     */
+    public static final int MAX_BITS = 56;
+
+    /**
+     * Default size of the internal byte buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Files at least this large are memory-mapped when read.
+     */
+    public static final long MAP_THRESHOLD = 16L << 20;
+
+    /**
+     * Largest part of a file mapped at a time.
+     */
+    public static final int MAP_WINDOW_SIZE = 1 << 30;
+
+    private static final int BITS_PER_BYTE = 8;
+
+    private InputStream  myInput;
+    private File         myFile;
+    private byte[]       myBytes;
+    private ByteBuffer   myByteView;
+    private int          myPos;        // next byte of myBytes to go into the register
+    private int          myLimit;      // end of valid bytes in myBytes
+    private boolean      myEof;
+    private boolean      myMapped;     // myByteView is a mapping or a ByteBuffer
+    private FileChannel  myChannel;    // open while windows of a large file are left
+    private long         myWindowStart; // file offset of myByteView index 0
+    private int          myWindowSize;
+    private long         myBits;       // register, next bit is the leftmost one
+    private int          myBitCount;   // number of valid bits in the register
+    private int          myPadBits;    // zero bits in the register past end of input
+
+    /**
+     * Open a stream that reads from supplied InputStream, it is not reset-able.
+     * @param in is the stream from which bits are read.
+     */
+    public BufferedBitInputStream(InputStream in)
+    {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Open a stream with the given buffer size.
+     * @param in is the stream from which bits are read.
+     * @param bufferSize is the number of bytes read from in at a time
+     */
+    public BufferedBitInputStream(InputStream in, int bufferSize)
+    {
+        super((InputStream) null);
+        if (bufferSize < BITS_PER_BYTE) {
+            throw new IllegalArgumentException("buffer size too small");
+        }
+        myBytes = new byte[bufferSize];
+        myByteView = ByteBuffer.wrap(myBytes);
+        myInput = in;
+    }
+
+    /**
+     * Open a stream over the remaining bytes of <code>buf</code>, which is
+     * read in place, it is not reset-able.
+     * @param buf is the source of the bits, its position is not changed
+     */
+    public BufferedBitInputStream(ByteBuffer buf)
+    {
+        this((InputStream) null, BITS_PER_BYTE);
+        myByteView = buf.slice();
+        myLimit = myByteView.limit();
+        myEof = true;
+        myMapped = true;
+    }
+
+    /**
+     * Construct a stream from a file whose name is supplied.
+     * @param filename is the name of the file that will be read.
+     * @throws RuntimeException if filename cannot be opened.
+     */
+    public BufferedBitInputStream(String filename)
+    {
+        this(new File(filename));
+    }
+
+    /**
+     * Construct a stream from <code>file</code>, it can be reset.
+     * @param file is the File that is the source of the input
+     * @throws RuntimeException if file cannot be opened.
+     */
+    public BufferedBitInputStream(File file)
+    {
+        this(file, MAP_WINDOW_SIZE);
+    }
+
+    /**
+     * Construct a stream from <code>file</code> that maps at most
+     * <code>windowSize</code> bytes at a time.
+     */
+    BufferedBitInputStream(File file, int windowSize)
+    {
+        this((InputStream) null, DEFAULT_BUFFER_SIZE);
+        if (windowSize < DEFAULT_BUFFER_SIZE) {
+            throw new IllegalArgumentException("window size too small");
+        }
+        myFile = file;
+        myWindowSize = windowSize;
+        try {
+            reset();
+        } catch (IOException e) {
+            throw new RuntimeException("could not open file for reading bits "+e);
+        }
+    }
+
+    /**
+     * Return true if the stream has been initialized from a File.
+     * @return true if stream can be reset
+     */
+    public boolean markSupported()
+    {
+        return myFile != null;
+    }
+
+    /**
+     * Reset stream to beginning by reopening the file.
+     * @throws IOException if not reset-able (e.g., constructed from InputStream).
+     */
+    public void reset() throws IOException
+    {
+        if (! markSupported()){
+            throw new IOException("not resettable");
+        }
+        close();
+        myPos = myLimit = 0;
+        myEof = false;
+        myBits = 0;
+        myBitCount = myPadBits = 0;
+        myByteView = ByteBuffer.wrap(myBytes);
+        myMapped = false;
+        myWindowStart = 0;
+        if (myFile.length() >= MAP_THRESHOLD) {
+            map();
+            return;
+        }
+        try{
+            myInput = new FileInputStream(myFile);
+        }
+        catch (FileNotFoundException fnf){
+            System.err.println("error opening " + myFile.getName() + " " + fnf);
+            myInput = null;
+        }
+    }
+
+    /**
+     * map the first window of the file, the mapping stays valid after the
+     * channel is closed
+     */
+    private void map() throws IOException
+    {
+        myInput = null;
+        myChannel = FileChannel.open(myFile.toPath(), StandardOpenOption.READ);
+        myMapped = true;
+        mapWindow(0);
+    }
+
+    /**
+     * map the window starting at a file offset, the channel is closed once
+     * the last window is mapped
+     */
+    private void mapWindow(long start) throws IOException
+    {
+        long size = myChannel.size();
+        long len = Math.min(myWindowSize, size - start);
+        myByteView = myChannel.map(FileChannel.MapMode.READ_ONLY, start, len);
+        myWindowStart = start;
+        myPos = 0;
+        myLimit = (int) len;
+        if (start + len == size) {
+            myEof = true;
+            myChannel.close();
+            myChannel = null;
+        }
+    }
+
+    /**
+     * Closes the input stream.
+     * @throws RuntimeException if the close fails
+     */
+    public void close()
+    {
+        try{
+            if (myInput != null) {
+                myInput.close();
+            }
+            if (myChannel != null) {
+                myChannel.close();
+                myChannel = null;
+            }
+        }
+        catch (IOException ioe){
+           throw new RuntimeException("error closing bit stream " + ioe);
+        }
+    }
+
+    /**
+     * Returns the next <code>n</code> bits without consuming them, bits past
+     * the end of input are zero.
+     * @param n is the number of bits, 0 to MAX_BITS
+     * @return the bits as rightmost bits of the value
+     * @throws IOException if reading fails or input was consumed far past its end
+     */
+    public long peekBits(int n) throws IOException
+    {
+        if (myBitCount < n) {
+            refill();
+        }
+        //two shifts so that n == 0 gives 0
+        return (myBits >>> 1) >>> (63 - n);
+    }
+
+    /**
+     * Consume <code>n</code> bits, which must have been peeked.
+     * @param n is the number of bits, at most the number last peeked
+     */
+    public void skipBits(int n)
+    {
+        myBits <<= n;
+        myBitCount -= n;
+    }
+
+    /**
+     * Read and consume <code>n</code> bits, bits past the end of input are zero.
+     * @param n is the number of bits, 0 to MAX_BITS
+     * @return the bits as rightmost bits of the value
+     * @throws IOException if reading fails or input was consumed far past its end
+     */
+    public long readBits(int n) throws IOException
+    {
+        long bits = peekBits(n);
+        skipBits(n);
+        return bits;
+    }
+
+    /**
+     * @return the number of bytes consumed, a partly consumed last byte
+     * included, only meaningful for streams over a ByteBuffer or a mapped
+     * file
+     */
+    long bytesConsumed()
+    {
+        return ((myWindowStart + myPos) * BITS_PER_BYTE - myBitCount + myPadBits + BITS_PER_BYTE - 1) / BITS_PER_BYTE;
+    }
+
+    /**
+     * @return true if more bits were consumed than the input holds
+     */
+    public boolean overrun()
+    {
+        return myBitCount < myPadBits;
+    }
+
+    /**
+     * Returns the number of bits requested as rightmost bits in
+     * returned value, returns -1 if not enough bits available to
+     * satisfy the request.
+     * @param howManyBits is the number of bits to read and return (1-32)
+     * @return the value read, -1 if not enough bits left
+     */
+    public int read(int howManyBits) throws IOException
+    {
+        if (myInput == null && !myMapped){
+            return -1;
+        }
+        if (myBitCount < howManyBits) {
+            refill();
+        }
+        if (myBitCount - myPadBits < howManyBits) {
+            return -1;
+        }
+        return (int) readBits(howManyBits);
+    }
+
+    /**
+     * Returns the next byte from this stream as an int value.
+     * @return the next byte from this stream, -1 at end of input
+     */
+    public int read() throws IOException
+    {
+        return read(BITS_PER_BYTE);
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes. At a byte boundary they are
+     * copied from the buffer in bulk, otherwise they are read 8 bits at a
+     * time.
+     * @return the number of bytes read, -1 at end of input
+     */
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if ((myInput == null && !myMapped) || overrun()) {
+            return -1;
+        }
+        int n = 0;
+        if ((myBitCount - myPadBits) % BITS_PER_BYTE != 0) {
+            int c;
+            while (n < len && (c = read(BITS_PER_BYTE)) != -1) {
+                b[off + n++] = (byte) c;
+            }
+            return n == 0 ? -1 : n;
+        }
+        //whole bytes already in the register go first
+        while (n < len && myBitCount - myPadBits >= BITS_PER_BYTE) {
+            b[off + n++] = (byte) readBits(BITS_PER_BYTE);
+        }
+        if (n < len) {
+            //the register is empty but may hold look-ahead bits of bytes
+            //past myPos, they are copied from the buffer below
+            myBits = 0;
+            myBitCount = myPadBits = 0;
+        }
+        while (n < len) {
+            if (myPos == myLimit) {
+                if (myEof) {
+                    break;
+                }
+                fillBuffer();
+                continue;
+            }
+            int k = Math.min(len - n, myLimit - myPos);
+            myByteView.get(myPos, b, off + n, k);
+            myPos += k;
+            n += k;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Not meaningful here, all buffered bits are kept in the register.
+     * @return 0
+     */
+    int bufferedBits()
+    {
+        return 0;
+    }
+
+    /**
+     * top up the register to at least 56 bits
+     */
+    private void refill() throws IOException
+    {
+        if (myLimit - myPos < BITS_PER_BYTE && !myEof) {
+            fillBuffer();
+        }
+        if (myLimit - myPos >= BITS_PER_BYTE) {
+            //load a whole word, bits already in the register are the same bytes
+            myBits |= myByteView.getLong(myPos) >>> myBitCount;
+            myPos += (63 - myBitCount) >>> 3;
+            myBitCount |= 56;
+            return;
+        }
+        while (myBitCount <= 56) {
+            if (myPos < myLimit) {
+                myBits |= (myByteView.get(myPos++) & 0xffL) << (56 - myBitCount);
+            }
+            else {
+                if (overrun()) {
+                    throw new IOException("unexpected end of input");
+                }
+                myPadBits += BITS_PER_BYTE;
+            }
+            myBitCount += BITS_PER_BYTE;
+        }
+    }
+
+    /**
+     * map the next window of a large file, or move the unread bytes to the
+     * front of the buffer and read more, only blocks until a word is
+     * available so that slow streams are not stalled
+     */
+    private void fillBuffer() throws IOException
+    {
+        if (myChannel != null) {
+            //the unread end of this window starts the next one
+            mapWindow(myWindowStart + myPos);
+            return;
+        }
+        int rest = myLimit - myPos;
+        System.arraycopy(myBytes, myPos, myBytes, 0, rest);
+        myPos = 0;
+        myLimit = rest;
+        if (myInput == null) {
+            myEof = true;
+            return;
+        }
+        while (myLimit < BITS_PER_BYTE) {
+            int n = myInput.read(myBytes, myLimit, myBytes.length - myLimit);
+            if (n == -1) {
+                myEof = true;
+                return;
+            }
+            myLimit += n;
+        }
+    }
+}
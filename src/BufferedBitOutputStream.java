@@ -0,0 +1,322 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * High-throughput replacement for <code>BitOutputStream</code>. Bits are
+ * packed into a 64-bit accumulator and every completed byte is stored into
+ * an internal buffer with a single 8-byte store, so there is no branch or
+ * virtual call per byte. The buffer is written to the underlying stream in
+ * large chunks, which makes an extra <code>BufferedOutputStream</code>
+ * unnecessary.
+ * <P>
+ * Unlike <code>BitOutputStream</code> nothing reaches the underlying stream
+ * before the buffer fills up or <code>flush</code>/<code>close</code> is
+ * called. Since it is a <code>BitOutputStream</code> it can be passed
+ * wherever one is expected, e.g., to <code>IHuffHeader.writeHeader</code>.
+ * <P>
+ * Large outputs can be written to a <code>FileChannel</code> instead, from
+ * a direct buffer so the bytes are not copied again on their way out.
+ * In-memory outputs can be written straight into a <code>ByteBuffer</code>.
+ * <P>
+ * Any exceptions generated are rethrown as <code>RuntimeException</code> objects
+ * so client code does not have to catch or rethrow them.
+ */
+public class BufferedBitOutputStream extends BitOutputStream
+{
+    /**
+     * The largest number of bits a single <code>writeBits</code> call accepts.
+     */
+    public static final int MAX_BITS = 57;
+
+    /**
+     * Default size of the internal byte buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Size of the direct buffer suggested for writing large files to a channel.
+     */
+    public static final int LARGE_BUFFER_SIZE = 1 << 20;
+
+    private static final int BITS_PER_BYTE = 8;
+
+    private OutputStream  myOutput;
+    private FileChannel   myChannel;
+    private long          myBits;       // pending bits, right aligned
+    private int           myBitCount;   // number of pending bits, < 8 between calls
+    private byte[]        myBytes;      // completed bytes not yet written to myOutput
+    private ByteBuffer    myByteView;
+    private int           myPos;
+    private int           myLimit;
+    private boolean       myTarget;     // writing straight into myByteView
+
+    /**
+     * Create a stream that writes to the <code>OutputStream</code> object
+     * passed as a parameter.
+     * @param out is the output stream to which bits are written
+     */
+    public BufferedBitOutputStream(OutputStream out)
+    {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a stream with the given buffer size.
+     * @param out is the output stream to which bits are written
+     * @param bufferSize is the number of bytes collected before writing to out
+     */
+    public BufferedBitOutputStream(OutputStream out, int bufferSize)
+    {
+        super(out);
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        myOutput = out;
+        //8 bytes of slack so a whole long can always be stored at myPos
+        myBytes = new byte[bufferSize + 8];
+        myByteView = ByteBuffer.wrap(myBytes);
+        myLimit = bufferSize;
+    }
+
+    /**
+     * Create a stream that writes to a file channel through a direct buffer.
+     * @param channel is the channel to which bits are written
+     * @param bufferSize is the number of bytes collected before writing to channel
+     */
+    public BufferedBitOutputStream(FileChannel channel, int bufferSize)
+    {
+        super((OutputStream) null);
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        myChannel = channel;
+        myByteView = ByteBuffer.allocateDirect(bufferSize + 8);
+        myLimit = bufferSize;
+    }
+
+    /**
+     * Create a stream that writes straight into <code>buf</code> from its
+     * position, so the bytes are never copied. Since whole words are
+     * stored, there has to be room for 8 bytes past the last byte of data;
+     * a write that needs more throws. The position of buf is not changed.
+     * @param buf is where the bits are written
+     */
+    public BufferedBitOutputStream(ByteBuffer buf)
+    {
+        super((OutputStream) null);
+        if (buf.remaining() < 8) {
+            throw new IllegalArgumentException("buffer too small");
+        }
+        //a duplicate is big-endian whatever the order of buf
+        myByteView = buf.duplicate();
+        myPos = buf.position();
+        myLimit = buf.limit() - 8;
+        myTarget = true;
+    }
+
+    /**
+     * Construct a buffered bit output stream with specified file name.
+     * @param filename is the name of the file being written
+     * @throws RuntimeException if opening file fails
+     */
+    public BufferedBitOutputStream(String filename)
+    {
+        this(open(filename));
+    }
+
+    private static OutputStream open(String filename)
+    {
+        try{
+            return new FileOutputStream(filename);
+        }
+        catch (FileNotFoundException fnf){
+            throw new RuntimeException("could not create " + filename + " " + fnf);
+        }
+        catch(SecurityException se){
+            throw new RuntimeException("security exception on write " + se);
+        }
+    }
+
+    /**
+     * Write the low 8-bits, after any bits already written.
+     */
+    public void write(int b)
+    {
+        writeBits(BITS_PER_BYTE, b);
+    }
+
+    /**
+     * Write <code>len</code> bytes, copied in bulk when the stream is
+     * on a byte boundary.
+     * @param b is the source of the bytes
+     * @param off is the index of the first byte written
+     * @param len is the number of bytes written
+     */
+    public void write(byte[] b, int off, int len)
+    {
+        if (myBitCount != 0) {
+            for (int i = 0; i < len; i++) {
+                writeBits(BITS_PER_BYTE, b[off + i]);
+            }
+            return;
+        }
+        if (myTarget) {
+            if (len > myLimit - myPos) {
+                throw new RuntimeException("error writing bytes, buffer full");
+            }
+        }
+        else try{
+            if (len > myLimit - myPos) {
+                drain();
+                if (len > myLimit / 2) {
+                    if (myChannel != null) {
+                        writeFully(ByteBuffer.wrap(b, off, len));
+                    }
+                    else {
+                        myOutput.write(b, off, len);
+                    }
+                    return;
+                }
+            }
+        }
+        catch (IOException ioe){
+            throw new RuntimeException("error writing bytes " + ioe);
+        }
+        myByteView.position(myPos);
+        myByteView.put(b, off, len);
+        myPos += len;
+    }
+
+    /**
+     * Write specified number of bits from value.
+     * @param howManyBits is number of bits to write (1-32)
+     * @param value is source of bits, rightmost bits are written
+     * @throws RuntimeException if there's an I/O problem writing bits
+     */
+    public void write(int howManyBits, int value)
+    {
+        writeBits(howManyBits, value & 0xffffffffL);
+    }
+
+    /**
+     * Write up to MAX_BITS bits at once.
+     * @param howManyBits is number of bits to write (0-57)
+     * @param value is source of bits, rightmost bits are written
+     * @throws RuntimeException if there's an I/O problem writing bits
+     */
+    public void writeBits(int howManyBits, long value)
+    {
+        if (howManyBits == 0) {
+            return;
+        }
+        myBits = (myBits << howManyBits) | (value & (-1L >>> (64 - howManyBits)));
+        myBitCount += howManyBits;
+        //left align the pending bits and store all of them, only whole bytes count
+        myByteView.putLong(myPos, myBits << (64 - myBitCount));
+        myPos += myBitCount >>> 3;
+        myBitCount &= 7;
+        myBits &= (1L << myBitCount) - 1;
+        if (myPos >= myLimit) {
+            try{
+                drain();
+            }
+            catch (IOException ioe){
+                throw new RuntimeException("error writing bits " + ioe);
+            }
+        }
+    }
+
+    /**
+     * Flushes bits not yet written, the last byte is padded with zeros.
+     * @throws RuntimeException if there's a problem writing bits
+     */
+    public void flush()
+    {
+        if (myBitCount != 0) {
+            myByteView.put(myPos++, (byte) (myBits << (BITS_PER_BYTE - myBitCount)));
+            myBits = 0;
+            myBitCount = 0;
+        }
+        try{
+            drain();
+            if (myOutput != null) {
+                myOutput.flush();
+            }
+        }
+        catch (IOException ioe){
+            throw new RuntimeException("error on flush " + ioe);
+        }
+    }
+
+    /**
+     * Writes every completed byte to the underlying stream and flushes it,
+     * without padding, the bits of a partial last byte are kept.
+     * @throws RuntimeException if there's a problem writing bits
+     */
+    public void flushBytes()
+    {
+        try{
+            drain();
+            if (myOutput != null) {
+                myOutput.flush();
+            }
+        }
+        catch (IOException ioe){
+            throw new RuntimeException("error on flush " + ioe);
+        }
+    }
+
+    /**
+     * Flushes bits not yet written and releases the underlying stream.
+     * @throws RuntimeException if close fails
+     */
+    public void close()
+    {
+        flush();
+        try{
+            if (myChannel != null) {
+                myChannel.close();
+            }
+            else if (myOutput != null) {
+                myOutput.close();
+            }
+        }
+        catch (IOException ioe){
+            throw new RuntimeException("error closing BufferedBitOutputStream " + ioe);
+        }
+    }
+
+    /**
+     * write the completed bytes to the underlying stream in one call
+     */
+    private void drain() throws IOException
+    {
+        if (myTarget) {
+            //the bytes are already in place, there is nothing to write
+            if (myPos > myLimit) {
+                throw new IOException("buffer full");
+            }
+            return;
+        }
+        if (myPos > 0) {
+            if (myChannel != null) {
+                myByteView.limit(myPos);
+                myByteView.position(0);
+                writeFully(myByteView);
+                myByteView.clear();
+            }
+            else {
+                myOutput.write(myBytes, 0, myPos);
+            }
+            myPos = 0;
+        }
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException
+    {
+        while (buf.hasRemaining()) {
+            myChannel.write(buf);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Canonical Huffman codes. Only the code length of every symbol is needed
+ * to rebuild the codes: symbols are ordered by (length, value) and get
+ * consecutive code values, shorter codes first. The header therefore stores
+ * the ALPH_SIZE + 1 code lengths, run-length encoded, instead of the tree.
+ * <P>
+ * Each run of equal lengths is written as LENGTH_BITS bits for the length,
+ * then a 0 bit for a run of one, or a 1 bit followed by RUN_BITS bits
+ * holding the run length minus two.
+ */
+public class CanonicalCode implements IHuffConstants {
+
+	/**
+	 * Number of bits used to store one code length.
+	 */
+	public static final int LENGTH_BITS = 6;
+
+	/**
+	 * Number of bits used to store a repeat count.
+	 */
+	public static final int RUN_BITS = 8;
+
+	private static final int MAX_RUN = (1 << RUN_BITS) + 1;
+
+	/**
+	 * Get the code length of every symbol from a Huffman tree.
+	 * @param root is the root of the tree
+	 * @return the code lengths indexed by symbol, 0 for absent symbols
+	 */
+	public static int[] lengths(IHuffBaseNode root) {
+		return lengths(root, ALPH_SIZE + 1);
+	}
+
+	/**
+	 * Get the code length of every symbol from a Huffman tree over an
+	 * alphabet of any size.
+	 * @param root is the root of the tree
+	 * @param symbols is the number of symbols, PSEUDO_EOF included
+	 * @return the code lengths indexed by symbol, 0 for absent symbols
+	 */
+	public static int[] lengths(IHuffBaseNode root, int symbols) {
+		int[] lengths = new int[symbols];
+		collectLengths(root, 0, lengths);
+		return lengths;
+	}
+
+	private static void collectLengths(IHuffBaseNode node, int depth, int[] lengths) {
+		if(node == null) {
+			throw new IllegalArgumentException();
+		}
+		if(node.isLeaf()) {
+			lengths[((HuffLeafNode)node).element()] = depth;
+			return;
+		}
+		collectLengths(((HuffInternalNode)node).left(), depth + 1, lengths);
+		collectLengths(((HuffInternalNode)node).right(), depth + 1, lengths);
+	}
+
+	/**
+	 * Huffman code lengths computed on primitive arrays, without tree nodes
+	 * or a heap. The symbols are sorted by weight and the in-place method of
+	 * Moffat and Katajainen turns the sorted weights into parent pointers,
+	 * then into depths of the internal nodes and finally into leaf depths.
+	 * @param weights is the count of every symbol, 0 for absent symbols
+	 * @return the code lengths indexed by symbol, 0 for absent symbols, a
+	 * single symbol gets a length of 1
+	 */
+	public static int[] huffmanLengths(long[] weights) {
+		int[] lengths = new int[weights.length];
+		huffmanLengths(weights, lengths, new long[weights.length], new int[weights.length]);
+		return lengths;
+	}
+
+	/**
+	 * Huffman code lengths into arrays supplied by the caller, so that a
+	 * caller that builds many codes allocates nothing.
+	 * @param weights is the count of every symbol, 0 for absent symbols
+	 * @param lengths receives the code lengths, as long as weights
+	 * @param a is scratch space as long as weights
+	 * @param sym is scratch space as long as weights
+	 */
+	static void huffmanLengths(long[] weights, int[] lengths, long[] a, int[] sym) {
+		Arrays.fill(lengths, 0);
+		int shift = Math.max(1, 32 - Integer.numberOfLeadingZeros(weights.length - 1));
+		long mask = (1L << shift) - 1;
+		//weight and symbol packed into one long, so a primitive sort orders them
+		int n = 0;
+		for(int i = 0; i < weights.length; i++) {
+			if(weights[i] > 0) {
+				if(weights[i] >>> (63 - shift) != 0) {
+					throw new IllegalArgumentException("weight too large");
+				}
+				a[n++] = (weights[i] << shift) | i;
+			}
+		}
+		if(n == 0) {
+			return;
+		}
+		if(n == 1) {
+			lengths[(int)(a[0] & mask)] = 1;
+			return;
+		}
+		Arrays.sort(a, 0, n);
+		for(int i = 0; i < n; i++) {
+			sym[i] = (int)(a[i] & mask);
+			a[i] >>>= shift;
+		}
+		//first pass, left to right, weights of internal nodes and parent pointers
+		a[0] += a[1];
+		int root = 0;
+		int leaf = 2;
+		for(int next = 1; next < n - 1; next++) {
+			if(leaf >= n || a[root] < a[leaf]) {
+				a[next] = a[root];
+				a[root++] = next;
+			}
+			else {
+				a[next] = a[leaf++];
+			}
+			if(leaf >= n || (root < next && a[root] < a[leaf])) {
+				a[next] += a[root];
+				a[root++] = next;
+			}
+			else {
+				a[next] += a[leaf++];
+			}
+		}
+		//second pass, right to left, depths of internal nodes
+		a[n - 2] = 0;
+		for(int next = n - 3; next >= 0; next--) {
+			a[next] = a[(int)a[next]] + 1;
+		}
+		//third pass, right to left, depths of the leaves, heaviest first
+		int avbl = 1;
+		int used = 0;
+		int depth = 0;
+		root = n - 2;
+		int next = n - 1;
+		while(avbl > 0) {
+			while(root >= 0 && a[root] == depth) {
+				used++;
+				root--;
+			}
+			while(avbl > used) {
+				lengths[sym[next--]] = depth;
+				avbl--;
+			}
+			avbl = 2 * used;
+			depth++;
+			used = 0;
+		}
+	}
+
+	/**
+	 * Optimal code lengths no longer than <code>maxLength</code>, computed
+	 * with the package-merge algorithm. Every level from maxLength up to 1
+	 * merges the symbols with the pairs (packages) of the level below, the
+	 * number of times a symbol is picked among the cheapest 2n - 2 items of
+	 * level 1 and the packages they come from is its code length.
+	 * @param weights is the count of every symbol, 0 for absent symbols
+	 * @param maxLength is the longest code allowed
+	 * @return the code lengths indexed by symbol, 0 for absent symbols
+	 * @throws IllegalArgumentException if the symbols do not fit in maxLength bits
+	 */
+	public static int[] limitedLengths(long[] weights, int maxLength) {
+		int n = 0;
+		for(long w : weights) {
+			if(w > 0) {
+				n++;
+			}
+		}
+		if(maxLength < 1 || maxLength >= BITS_PER_INT || (n > 1 && n - 1 > (1L << maxLength) - 1)) {
+			throw new IllegalArgumentException("symbols do not fit in " + maxLength + " bits");
+		}
+		int[] lengths = new int[weights.length];
+		//symbols sorted by weight, ties by symbol so that the result is stable
+		int[] sorted = sortByWeight(weights, n);
+		if(n == 1) {
+			lengths[sorted[0]] = 1;
+			return lengths;
+		}
+		long[] leaf = new long[n];
+		for(int i = 0; i < n; i++) {
+			leaf[i] = weights[sorted[i]];
+		}
+		//isLeaf[d][k] tells if item k of level d is a symbol or a package,
+		//needed to walk back from level 1
+		boolean[][] isLeaf = new boolean[maxLength + 1][];
+		long[] prev = leaf.clone();
+		isLeaf[maxLength] = new boolean[n];
+		Arrays.fill(isLeaf[maxLength], true);
+		for(int d = maxLength - 1; d >= 1; d--) {
+			int packages = prev.length / 2;
+			long[] cur = new long[n + packages];
+			boolean[] kind = new boolean[n + packages];
+			int i = 0;
+			int j = 0;
+			for(int k = 0; k < cur.length; k++) {
+				long pack = j < packages ? prev[2 * j] + prev[2 * j + 1] : Long.MAX_VALUE;
+				if(i < n && leaf[i] <= pack) {
+					cur[k] = leaf[i++];
+					kind[k] = true;
+				}
+				else {
+					cur[k] = pack;
+					j++;
+				}
+			}
+			prev = cur;
+			isLeaf[d] = kind;
+		}
+		//walk back down, the leaves picked at every level are the lightest ones
+		int take = 2 * n - 2;
+		for(int d = 1; d <= maxLength && take > 0; d++) {
+			int picked = 0;
+			for(int k = 0; k < take; k++) {
+				if(isLeaf[d][k]) {
+					lengths[sorted[picked++]]++;
+				}
+			}
+			take = 2 * (take - picked);
+		}
+		return lengths;
+	}
+
+	/**
+	 * @return the n symbols of non-zero weight, lightest first
+	 */
+	private static int[] sortByWeight(long[] weights, int n) {
+		Integer[] order = new Integer[n];
+		int k = 0;
+		for(int i = 0; i < weights.length; i++) {
+			if(weights[i] > 0) {
+				order[k++] = i;
+			}
+		}
+		Arrays.sort(order, (a, b) -> weights[a] != weights[b]
+				? Long.compare(weights[a], weights[b]) : Integer.compare(a, b));
+		int[] sorted = new int[n];
+		for(int i = 0; i < n; i++) {
+			sorted[i] = order[i];
+		}
+		return sorted;
+	}
+
+	/**
+	 * @param lengths is the code length of every symbol
+	 * @return the longest code length
+	 */
+	public static int maxLength(int[] lengths) {
+		int maxLen = 0;
+		for(int len : lengths) {
+			maxLen = Math.max(maxLen, len);
+		}
+		return maxLen;
+	}
+
+	/**
+	 * Assign canonical codes from the code lengths.
+	 * @param lengths is the code length of every symbol
+	 * @return the code of every symbol, right aligned
+	 */
+	public static int[] codes(int[] lengths) {
+		int[] codes = new int[lengths.length];
+		codes(lengths, codes);
+		return codes;
+	}
+
+	/**
+	 * Assign canonical codes into an array supplied by the caller.
+	 * @param lengths is the code length of every symbol
+	 * @param codes receives the code of every symbol, as long as lengths
+	 */
+	static void codes(int[] lengths, int[] codes) {
+		int maxLen = 0;
+		for(int len : lengths) {
+			maxLen = Math.max(maxLen, len);
+		}
+		if(maxLen >= BITS_PER_INT) {
+			throw new IllegalArgumentException("code too long: " + maxLen);
+		}
+		//number of codes of every length
+		int[] lenCount = new int[maxLen + 1];
+		for(int len : lengths) {
+			lenCount[len]++;
+		}
+		lenCount[0] = 0;
+		//first code of every length
+		int[] next = new int[maxLen + 1];
+		int code = 0;
+		for(int len = 1; len <= maxLen; len++) {
+			code = (code + lenCount[len - 1]) << 1;
+			next[len] = code;
+		}
+		for(int i = 0; i < lengths.length; i++) {
+			codes[i] = lengths[i] != 0 ? next[lengths[i]]++ : 0;
+		}
+	}
+
+	/**
+	 * Write the run-length encoded code lengths.
+	 * @param out is where the lengths are written
+	 * @param lengths is the code length of every symbol
+	 * @return the number of bits written
+	 */
+	public static int writeLengths(BitOutputStream out, int[] lengths) {
+		int size = 0;
+		int i = 0;
+		while(i < lengths.length) {
+			int run = 1;
+			while(i + run < lengths.length && lengths[i + run] == lengths[i] && run < MAX_RUN) {
+				run++;
+			}
+			out.write(LENGTH_BITS, lengths[i]);
+			if(run == 1) {
+				out.write(1, 0);
+				size += LENGTH_BITS + 1;
+			}
+			else {
+				out.write(1, 1);
+				out.write(RUN_BITS, run - 2);
+				size += LENGTH_BITS + 1 + RUN_BITS;
+			}
+			i += run;
+		}
+		return size;
+	}
+
+	/**
+	 * count the bits <code>writeLengths</code> would write, without writing
+	 * @param lengths is the code length of every symbol
+	 * @return the size of the encoded lengths in bits
+	 */
+	public static int lengthsSize(int[] lengths) {
+		int size = 0;
+		int i = 0;
+		while(i < lengths.length) {
+			int run = 1;
+			while(i + run < lengths.length && lengths[i + run] == lengths[i] && run < MAX_RUN) {
+				run++;
+			}
+			size += run == 1 ? LENGTH_BITS + 1 : LENGTH_BITS + 1 + RUN_BITS;
+			i += run;
+		}
+		return size;
+	}
+
+	/**
+	 * Read the run-length encoded code lengths written by <code>writeLengths</code>.
+	 * @param in is the source of the lengths
+	 * @return the code length of every symbol
+	 * @throws IOException if the input ends early or the runs are malformed
+	 */
+	public static int[] readLengths(BitInputStream in) throws IOException {
+		return readLengths(in, ALPH_SIZE + 1);
+	}
+
+	/**
+	 * Read the code lengths of an alphabet of any size.
+	 * @param in is the source of the lengths
+	 * @param symbols is the number of symbols, PSEUDO_EOF included
+	 * @return the code length of every symbol
+	 * @throws IOException if the input ends early or the runs are malformed
+	 */
+	public static int[] readLengths(BitInputStream in, int symbols) throws IOException {
+		int[] lengths = new int[symbols];
+		readLengths(in, lengths);
+		return lengths;
+	}
+
+	/**
+	 * Read the code lengths into an array supplied by the caller.
+	 * @param in is the source of the lengths
+	 * @param lengths receives the code length of every symbol, its length is
+	 * the number of symbols
+	 * @throws IOException if the input ends early or the runs are malformed
+	 */
+	static void readLengths(BitInputStream in, int[] lengths) throws IOException {
+		int i = 0;
+		while(i < lengths.length) {
+			int len = in.read(LENGTH_BITS);
+			int flag = in.read(1);
+			int run = 1;
+			if(flag == 1) {
+				int extra = in.read(RUN_BITS);
+				if(extra == -1) {
+					throw new IOException("unexpected end of header");
+				}
+				run = extra + 2;
+			}
+			if(len == -1 || flag == -1 || i + run > lengths.length) {
+				throw new IOException("malformed code lengths in header");
+			}
+			for(int j = 0; j < run; j++) {
+				lengths[i++] = len;
+			}
+		}
+		if(!isComplete(lengths)) {
+			throw new IOException("code lengths in header are not a complete code");
+		}
+	}
+
+	/**
+	 * check the Kraft sum, a Huffman code uses up the whole code space
+	 * @param lengths is the code length of every symbol
+	 * @return true if the lengths describe a complete prefix code
+	 */
+	public static boolean isComplete(int[] lengths) {
+		long kraft = 0;
+		for(int len : lengths) {
+			if(len >= BITS_PER_INT) {
+				return false;
+			}
+			if(len != 0) {
+				kraft += 1L << (BITS_PER_INT - len);
+			}
+		}
+		return kraft == 1L << BITS_PER_INT;
+	}
+
+	/**
+	 * Rebuild a Huffman tree holding the canonical codes, leaf weights are 0.
+	 * @param lengths is the code length of every symbol
+	 * @return the tree
+	 * @throws IOException if the lengths do not describe a complete code
+	 */
+	public static HuffTree toTree(int[] lengths) throws IOException {
+		int[] codes = codes(lengths);
+		HuffInternalNode root = new HuffInternalNode(null, null, 0);
+		for(int sym = 0; sym < lengths.length; sym++) {
+			int len = lengths[sym];
+			if(len == 0) {
+				continue;
+			}
+			HuffInternalNode cur = root;
+			for(int bit = len - 1; bit > 0; bit--) {
+				boolean right = ((codes[sym] >>> bit) & 1) == 1;
+				IHuffBaseNode next = right ? cur.right() : cur.left();
+				if(next == null) {
+					next = new HuffInternalNode(null, null, 0);
+					if(right) {
+						cur.setRight(next);
+					}
+					else {
+						cur.setLeft(next);
+					}
+				}
+				if(next.isLeaf()) {
+					throw new IOException("code lengths are not a prefix code");
+				}
+				cur = (HuffInternalNode)next;
+			}
+			if((codes[sym] & 1) == 1) {
+				cur.setRight(new HuffLeafNode(sym, 0));
+			}
+			else {
+				cur.setLeft(new HuffLeafNode(sym, 0));
+			}
+		}
+		HuffTree tree = new HuffTree(0, 0);
+		tree.setRoot(root);
+		return tree;
+	}
+}
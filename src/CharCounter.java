@@ -1,20 +1,56 @@
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class CharCounter implements ICharCounter, IHuffConstants{
 
-	private int[] count;
+	//counts are 64-bit so that files over 2 GB are counted correctly
+	private long[] count;
 	private Map<Integer, Integer> map;
+	//extra histograms for the interleaved counting loop
+	private int[][] lanes;
+
+	//size of the chunks read from streams and mapped files
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	//file regions larger than this are split between threads
+	private static final long REGION_SIZE = 8L << 20;
 	
 	/**
 	 * class Constructor
 	 */
 	public CharCounter() {
 		//use array of ALPH_SIZE to store the count
-		count = new int[ALPH_SIZE];
+		count = new long[ALPH_SIZE];
+	}
+
+	/**
+	 * class Constructor for alphabets larger than a byte, e.g., for
+	 * 16-bit chunks. The byte counting methods only touch the first
+	 * ALPH_SIZE counts.
+	 * @param alphabetSize is the number of distinct chunks
+	 */
+	public CharCounter(int alphabetSize) {
+		if(alphabetSize < ALPH_SIZE) {
+			throw new IllegalArgumentException();
+		}
+		count = new long[alphabetSize];
+	}
+
+	/**
+	 * @return the number of distinct chunks that can be counted
+	 */
+	public int alphabetSize() {
+		return count.length;
 	}
 	
 	/**
@@ -22,38 +58,305 @@ public class CharCounter implements ICharCounter, IHuffConstants{
      * @param ch is the chunk/character for which count is requested
      * @return count of specified chunk
      * @throws IllegalArgumentException when input is not valid
+     * @throws ArithmeticException if the count does not fit in an int, see
+     * <code>getLongCount</code>
      */
 	@Override
 	public int getCount(int ch) {
-		if(ch < 0 || ch >= ALPH_SIZE) {
+		return Math.toIntExact(getLongCount(ch));
+	}
+
+	/**
+	 * Returns the count associated with specified character, which may be
+	 * more than fits in an int for inputs over 2 GB.
+	 * @param ch is the chunk/character for which count is requested
+	 * @return count of specified chunk
+	 * @throws IllegalArgumentException when input is not valid
+	 */
+	public long getLongCount(int ch) {
+		if(ch < 0 || ch >= count.length) {
 			throw new IllegalArgumentException();
 		}
 		//use array to store the count
 		return this.count[ch];
 	}
 
+	/**
+	 * @return the Shannon entropy of the counts in bits per chunk, the
+	 * fewest bits per chunk any code built from them can average, 0 if
+	 * nothing was counted
+	 */
+	public double entropy() {
+		long total = total();
+		double h = 0;
+		for(long c : count) {
+			if(c != 0) {
+				double p = (double)c / total;
+				h -= p * Math.log(p);
+			}
+		}
+		return h / Math.log(2);
+	}
+
+	/**
+	 * the count of a chunk from any counter, in 64 bits when the counter
+	 * keeps them
+	 */
+	static long getLongCount(ICharCounter counter, int ch) {
+		if(counter instanceof CharCounter) {
+			return ((CharCounter)counter).getLongCount(ch);
+		}
+		return counter.getCount(ch);
+	}
+
+	/**
+	 * @return the sum of all counts
+	 */
+	public long total() {
+		long sum = 0;
+		for(long c : count) {
+			sum += c;
+		}
+		return sum;
+	}
+
 	/**
      * Initialize state by counting bits/chunks in a stream
      * @param stream is source of data
      * @return count of all chunks/read
      * @throws IOException if reading fails
+     * @throws ArithmeticException if more chunks are read than fit in an
+     * int, the counts are kept, see <code>countAllLong</code>
      */
 	@Override
 	public int countAll(InputStream stream) throws IOException {
-		InputStream input = new BitInputStream(stream);
-		int c = input.read();
-		int cnt = 0;
-		while(c != -1) {
-			//count of c
-			this.count[c]++;
-			//total count
-			cnt++;
-			c = input.read();			
-		}
-		input.close();
+		return Math.toIntExact(countAllLong(stream));
+	}
+
+	/**
+	 * Initialize state by counting bits/chunks in a stream of any size.
+	 * @param stream is source of data, it is read to the end and closed
+	 * @return count of all chunks/read
+	 * @throws IOException if reading fails
+	 */
+	public long countAllLong(InputStream stream) throws IOException {
+		if(stream instanceof FileInputStream) {
+			//files are counted in parallel, straight from the mapped file
+			FileChannel channel = ((FileInputStream)stream).getChannel();
+			long position = seekablePosition(channel);
+			if(position >= 0) {
+				try {
+					return countAll(channel, position);
+				} finally {
+					stream.close();
+				}
+			}
+			//a pipe, FIFO or terminal is read as a stream
+		}
+		byte[] chunk = new byte[CHUNK_SIZE];
+		long cnt = 0;
+		int n;
+		while((n = stream.read(chunk)) != -1) {
+			cnt += count(chunk, 0, n);
+		}
+		stream.close();
+		return cnt;
+	}
+
+	/**
+	 * @return the position of a channel that can be mapped, -1 if it cannot
+	 * seek, e.g., a pipe
+	 */
+	private static long seekablePosition(FileChannel channel) {
+		try {
+			channel.size();
+			return channel.position();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Count the bytes of a file from <code>position</code> to its end. Large
+	 * files are split into regions that are memory-mapped and counted on the
+	 * common fork/join pool, each into its own histogram, and then merged.
+	 * @param channel is the file to count
+	 * @param position is the offset of the first byte counted
+	 * @return the number of bytes counted
+	 * @throws IOException if reading fails
+	 */
+	public long countAll(FileChannel channel, long position) throws IOException {
+		long size = channel.size();
+		if(position >= size) {
+			return 0;
+		}
+		long[] res;
+		try {
+			res = ForkJoinPool.commonPool().invoke(new CountTask(channel, position, size));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			this.count[i] += res[i];
+		}
+		return size - position;
+	}
+
+	/**
+	 * Count evenly spaced windows of a file instead of all of it, for a
+	 * quick look at the distribution of a large file. The windows start at
+	 * <code>position</code> and the last one ends at the end of the file.
+	 * @param channel is the file to sample
+	 * @param position is the offset of the first byte that may be counted
+	 * @param sampleBytes is about how many bytes to count, the whole rest of
+	 * the file is counted if it is not larger
+	 * @return the number of bytes counted
+	 * @throws IOException if reading fails
+	 */
+	public long countSample(FileChannel channel, long position, long sampleBytes) throws IOException {
+		long size = channel.size() - position;
+		if(size <= sampleBytes) {
+			return countAll(channel, position);
+		}
+		int windows = (int)Math.max(1, Math.min(sampleBytes / CHUNK_SIZE, size / CHUNK_SIZE));
+		int window = (int)Math.min(CHUNK_SIZE, sampleBytes / windows);
+		long stride = (size - window) / Math.max(1, windows - 1);
+		ByteBuffer buf = ByteBuffer.allocate(window);
+		long cnt = 0;
+		for(int i = 0; i < windows; i++) {
+			long from = position + (windows == 1 ? (size - window) / 2 : i * stride);
+			buf.clear();
+			while(buf.hasRemaining()) {
+				int n = channel.read(buf, from + buf.position());
+				if(n == -1) {
+					break;
+				}
+			}
+			cnt += count(buf.array(), 0, buf.position());
+		}
 		return cnt;
 	}
 
+	/**
+	 * Count one region of a file, splitting it in halves until the parts are
+	 * small enough.
+	 */
+	private static class CountTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private long from;
+		private long to;
+
+		CountTask(FileChannel channel, long from, long to) {
+			this.channel = channel;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[] compute() {
+			if(to - from > REGION_SIZE) {
+				long mid = from + (to - from) / 2;
+				CountTask left = new CountTask(channel, from, mid);
+				left.fork();
+				long[] res = new CountTask(channel, mid, to).compute();
+				long[] other = left.join();
+				for(int i = 0; i < ALPH_SIZE; i++) {
+					res[i] += other[i];
+				}
+				return res;
+			}
+			CharCounter counter = new CharCounter();
+			try {
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+				byte[] chunk = new byte[CHUNK_SIZE];
+				while(buf.hasRemaining()) {
+					int n = Math.min(chunk.length, buf.remaining());
+					buf.get(chunk, 0, n);
+					counter.count(chunk, 0, n);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return counter.count;
+		}
+	}
+
+	/**
+	 * Count the bytes of an array, for callers that already hold the data.
+	 * Four histograms are filled in turn so that runs of the same byte do
+	 * not wait on the increment of the previous one, then merged.
+	 * @param b is the source of the bytes
+	 * @param off is the index of the first byte counted
+	 * @param len is the number of bytes counted
+	 * @return the number of bytes counted
+	 */
+	public int count(byte[] b, int off, int len) {
+		if(lanes == null) {
+			lanes = new int[3][ALPH_SIZE];
+		}
+		long[] c0 = this.count;
+		int[] c1 = lanes[0];
+		int[] c2 = lanes[1];
+		int[] c3 = lanes[2];
+		int i = off;
+		int end = off + len;
+		for(; i + 3 < end; i += 4) {
+			c0[b[i] & 0xff]++;
+			c1[b[i + 1] & 0xff]++;
+			c2[b[i + 2] & 0xff]++;
+			c3[b[i + 3] & 0xff]++;
+		}
+		for(; i < end; i++) {
+			c0[b[i] & 0xff]++;
+		}
+		for(int j = 0; j < ALPH_SIZE; j++) {
+			c0[j] += c1[j] + c2[j] + c3[j];
+		}
+		Arrays.fill(c1, 0);
+		Arrays.fill(c2, 0);
+		Arrays.fill(c3, 0);
+		return len;
+	}
+
+	/**
+	 * Count the remaining bytes of a buffer, in place if it is a direct
+	 * buffer, its position is not changed.
+	 * @param buf is the source of the bytes
+	 * @return the number of bytes counted
+	 */
+	public int count(ByteBuffer buf) {
+		if(buf.hasArray()) {
+			return count(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+		}
+		if(lanes == null) {
+			lanes = new int[3][ALPH_SIZE];
+		}
+		long[] c0 = this.count;
+		int[] c1 = lanes[0];
+		int[] c2 = lanes[1];
+		int[] c3 = lanes[2];
+		int i = buf.position();
+		int end = buf.limit();
+		for(; i + 3 < end; i += 4) {
+			c0[buf.get(i) & 0xff]++;
+			c1[buf.get(i + 1) & 0xff]++;
+			c2[buf.get(i + 2) & 0xff]++;
+			c3[buf.get(i + 3) & 0xff]++;
+		}
+		for(; i < end; i++) {
+			c0[buf.get(i) & 0xff]++;
+		}
+		for(int j = 0; j < ALPH_SIZE; j++) {
+			c0[j] += c1[j] + c2[j] + c3[j];
+		}
+		Arrays.fill(c1, 0);
+		Arrays.fill(c2, 0);
+		Arrays.fill(c3, 0);
+		return end - buf.position();
+	}
+
 	/**
      * Update state to record one occurrence of specified chunk/character.
      * @param i is the chunk being recorded
@@ -73,6 +376,15 @@ public class CharCounter implements ICharCounter, IHuffConstants{
 		this.count[i] = value;		
 	}
 
+	/**
+	 * Set the count of a chunk to a value that may not fit in an int.
+	 * @param i is the chunk/character whose count is specified
+	 * @param value is # occurrences of specified chunk
+	 */
+	public void setLongCount(int i, long value) {
+		this.count[i] = value;
+	}
+
 	/**
      * All counts cleared to zero.
      */
@@ -84,14 +396,15 @@ public class CharCounter implements ICharCounter, IHuffConstants{
 
 	/**
      * @return a map of all characters and their frequency
+     * @throws ArithmeticException if a count does not fit in an int
      */
 	@Override
 	public Map<Integer, Integer> getTable() {
 		//translate the array to hash table
 		map = new HashMap<>();
-		for(int i = 0; i < ALPH_SIZE; i++) {
+		for(int i = 0; i < count.length; i++) {
 			if(this.count[i] != 0) {
-				map.put(i, this.count[i]);
+				map.put(i, Math.toIntExact(this.count[i]));
 			}			
 		}
 		return map;
@@ -191,4 +191,101 @@ public class CharCounterTest {
 			e.printStackTrace();
 		}	
 	}
+
+	/**
+	 * create the new CharCounter object and test the method "countAll"
+	 * gives the same counts for a file, split between threads, as for
+	 * the same bytes read from a stream
+	 */
+	@Test
+	public final void testCountAllFile() throws IOException {
+		//large enough to be split into several regions
+		byte[] data = new byte[(20 << 20) + 7];
+		java.util.Random rnd = new java.util.Random(1);
+		for(int i = 0; i < data.length; i++) {
+			data[i] = (byte)(rnd.nextInt(64) * rnd.nextInt(4));
+		}
+		File file = File.createTempFile("count", ".txt");
+		file.deleteOnExit();
+		java.nio.file.Files.write(file.toPath(), data);
+		CharCounter fromFile = new CharCounter();
+		CharCounter fromStream = new CharCounter();
+		assertEquals(data.length, fromFile.countAll(new java.io.FileInputStream(file)));
+		assertEquals(data.length, fromStream.countAll(new ByteArrayInputStream(data)));
+		int[] expected = new int[256];
+		for(byte b : data) {
+			expected[b & 0xff]++;
+		}
+		for(int i = 0; i < 256; i++) {
+			assertEquals(expected[i], fromStream.getCount(i));
+			assertEquals(expected[i], fromFile.getCount(i));
+		}
+		file.delete();
+	}
+
+	/**
+	 * create the new CharCounter object and count more than 2^31 bytes,
+	 * test that the 64-bit counts are right and that the int count of a
+	 * chunk that does not fit in an int is refused
+	 */
+	@Test
+	public final void testLongCounts() {
+		CharCounter cc = new CharCounter();
+		byte[] block = new byte[1 << 20];
+		java.util.Arrays.fill(block, (byte)'a');
+		block[0] = 't';
+		long total = 0;
+		while(cc.getLongCount('a') <= Integer.MAX_VALUE) {
+			total += cc.count(block, 0, block.length);
+		}
+		assertEquals(total, cc.total());
+		assertEquals(total / block.length, cc.getLongCount('t'));
+		assertEquals(total - total / block.length, cc.getLongCount('a'));
+		assertEquals(total / block.length, cc.getCount('t'));
+		try {
+			cc.getCount('a');
+			fail("the count does not fit in an int");
+		} catch (ArithmeticException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * create the new CharCounter object and test the method "countAll"
+	 * on a FIFO, which is a FileInputStream that cannot seek or be mapped
+	 */
+	@Test
+	public final void testCountAllFifo() throws Exception {
+		File dir = java.nio.file.Files.createTempDirectory("fifo").toFile();
+		File fifo = new File(dir, "fifo");
+		try {
+			Process mkfifo;
+			try {
+				mkfifo = new ProcessBuilder("mkfifo", fifo.getPath()).start();
+			} catch (IOException e) {
+				//no mkfifo here
+				org.junit.Assume.assumeNoException(e);
+				return;
+			}
+			org.junit.Assume.assumeTrue(mkfifo.waitFor() == 0);
+			byte[] data = "aaaabbbcc".getBytes("UTF-8");
+			Thread writer = new Thread(() -> {
+				try (java.io.FileOutputStream out = new java.io.FileOutputStream(fifo)) {
+					out.write(data);
+				} catch (IOException e) {
+					throw new java.io.UncheckedIOException(e);
+				}
+			});
+			writer.start();
+			CharCounter cc = new CharCounter();
+			assertEquals(data.length, cc.countAll(new java.io.FileInputStream(fifo)));
+			writer.join();
+			assertEquals(4, cc.getCount('a'));
+			assertEquals(3, cc.getCount('b'));
+			assertEquals(2, cc.getCount('c'));
+		} finally {
+			fifo.delete();
+			dir.delete();
+		}
+	}
 }
@@ -0,0 +1,44 @@
+import java.io.PrintStream;
+
+/**
+ * A decode listener that prints a sample of the decoded data: about once
+ * every <code>interval</code> bytes it prints the number of bytes decoded
+ * so far and the first bytes of the current batch, with bytes that are not
+ * printable shown as '.'.
+ */
+public class DecodeTrace implements IDecodeListener {
+
+	private PrintStream out;
+	private long interval;
+	private int preview;
+	private long next;
+
+	/**
+	 * class Constructor
+	 * @param out is where the trace is printed
+	 * @param interval is about how many bytes are decoded between two lines
+	 * @param preview is the number of bytes shown per line
+	 */
+	public DecodeTrace(PrintStream out, long interval, int preview) {
+		if(out == null || interval <= 0 || preview < 0) {
+			throw new IllegalArgumentException();
+		}
+		this.out = out;
+		this.interval = interval;
+		this.preview = preview;
+	}
+
+	@Override
+	public void decoded(byte[] batch, int len, long total) {
+		if(total < next) {
+			return;
+		}
+		next = (total / interval + 1) * interval;
+		StringBuilder line = new StringBuilder("decoded ").append(total).append(" bytes: ");
+		for(int i = 0; i < Math.min(preview, len); i++) {
+			char c = (char)(batch[i] & 0xff);
+			line.append(c >= ' ' && c < 0x7f ? c : '.');
+		}
+		out.println(line);
+	}
+}
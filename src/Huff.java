@@ -1,6 +1,13 @@
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -14,21 +21,121 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 	private ICharCounter cc;
 	private int tmpHeaderSize;
 	private int headerSize;
-	private int inputSize;
-	private int outputSize;
-	private int outSize;
+	//64-bit so that files over 2 GB are sized correctly, the input size
+	//counts chunks, the other two bits
+	private long inputSize;
+	private long outputSize;
+	private long outSize;
+	private boolean canonical;
+	private int maxCodeLength = DEFAULT_MAX_CODE_LENGTH;
+	private int[] codeLengths;
+	//code and code length of every symbol, indexed by symbol
+	private int[] codes;
+	private byte[] lengths;
+
+	//size of the chunks read from input streams while encoding
+	private static final int CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * Default limit on the length of a code in bits.
+	 */
+	public static final int DEFAULT_MAX_CODE_LENGTH = 24;
+
+	/**
+	 * Entropy in bits per byte of a sample from which the input is taken
+	 * to be incompressible, e.g., already compressed data.
+	 */
+	public static final double INCOMPRESSIBLE_ENTROPY = 7.95;
+
+	//files at least this large are sampled before they are counted
+	private static final long PRECHECK_MIN_SIZE = 1 << 20;
+	private static final long PRECHECK_SAMPLE_SIZE = 256 << 10;
+
+	//magic number and 64-bit length of stored data
+	static final int STORED_HEADER_SIZE = 3 * BITS_PER_INT;
+
+	private boolean precheck = true;
+	private IDecodeListener listener;
+
+	/**
+	 * Select canonical mode, the header then stores only the code length of
+	 * every symbol and the codes are derived from those lengths.
+	 * @param canonical is true to write canonical codes and header
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+
+	/**
+	 * Select whether large files are sampled before they are compressed.
+	 * If the entropy of the sample is at least INCOMPRESSIBLE_ENTROPY the
+	 * file is not counted and coded but stored as it is. The default is on.
+	 * @param precheck is true to sample files first
+	 */
+	public void setPrecheck(boolean precheck) {
+		this.precheck = precheck;
+	}
+
+	/**
+	 * Set a listener that is shown every batch of bytes decoded by
+	 * <code>uncompress</code>, e.g., a <code>DecodeTrace</code>. Formats
+	 * decoded by BlockHuff, AdaptiveHuff and WideHuff and stored files,
+	 * which are copied as they are, are not shown.
+	 * @param listener is the listener, null for none
+	 */
+	public void setDecodeListener(IDecodeListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Limit the length of the codes, e.g., to 12 or 15 bits so that the
+	 * decode tables stay small. Trees with longer codes are replaced by the
+	 * best code that respects the limit.
+	 * @param maxCodeLength is the longest code allowed, 9 to 31
+	 * @throws IllegalArgumentException if the limit cannot hold all chunks
+	 */
+	public void setMaxCodeLength(int maxCodeLength) {
+		if((1L << maxCodeLength) <= ALPH_SIZE || maxCodeLength >= BITS_PER_INT) {
+			throw new IllegalArgumentException();
+		}
+		this.maxCodeLength = maxCodeLength;
+	}
 	
 	/**
      * Build the Huffman/coding tree.
      */
 	@Override
 	public HuffTree makeHuffTree(InputStream stream) throws IOException {
-		cc = new CharCounter();
-		inputSize = cc.countAll(stream);
-		if(inputSize == 0) {
+		CharCounter counter = new CharCounter();
+		if(counter.countAllLong(stream) == 0) {
 			throw new IllegalArgumentException();
 		}
-		countMap = cc.getTable();		
+		return makeHuffTree(counter);
+	}
+
+	/**
+	 * Build the Huffman/coding tree from counts that are already known, e.g.,
+	 * gathered while buffering a stream or supplied as a model.
+	 * @param counter holds the count of every chunk
+	 * @return the Huffman tree
+	 */
+	public HuffTree makeHuffTree(ICharCounter counter) {
+		cc = counter;
+		long[] weights = weights(counter);
+		if(inputSize >= Integer.MAX_VALUE) {
+			//the weights of the tree nodes are ints, so the tree is built
+			//from code lengths computed on the 64-bit counts instead
+			countMap = null;
+			try {
+				huff = CanonicalCode.toTree(codeLengths(weights));
+			} catch (IOException e) {
+				//the lengths are always a complete code
+				throw new IllegalStateException(e);
+			}
+			root = huff.root();
+			return huff;
+		}
+		countMap = cc.getTable();
 		//make a huff tree array
 		HuffTree[] treeArray = new HuffTree[countMap.size() + 1];
 		int i = 0;
@@ -41,10 +148,77 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 		huff = buildTree();
 		if(huff != null) {
 			root = huff.root();
+			limitLengths(weights);
 		}		
 		return huff;		
 	}
 	
+	/**
+	 * Build the codes for the write methods. In canonical mode no tree is
+	 * needed, the code lengths are computed from the counts on primitive
+	 * arrays, which saves the node objects and the heap for every block
+	 * and message. Otherwise the tree is built as usual.
+	 * @param counter holds the count of every chunk
+	 */
+	private void makeCodes(ICharCounter counter) {
+		if(!canonical) {
+			makeHuffTree(counter);
+			makeTable();
+			return;
+		}
+		cc = counter;
+		countMap = null;
+		codeLengths = codeLengths(weights(counter));
+		codes = CanonicalCode.codes(codeLengths);
+		lengths = new byte[ALPH_SIZE + 1];
+		for(int i = 0; i < codeLengths.length; i++) {
+			lengths[i] = (byte)codeLengths[i];
+		}
+		tmpHeaderSize = BITS_PER_INT + CanonicalCode.lengthsSize(codeLengths);
+	}
+
+	/**
+	 * the 64-bit count of every chunk and one for PSEUDO_EOF, the input
+	 * size is set to the sum of the counts
+	 */
+	private long[] weights(ICharCounter counter) {
+		long[] weights = new long[ALPH_SIZE + 1];
+		inputSize = 0;
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			weights[i] = CharCounter.getLongCount(counter, i);
+			inputSize += weights[i];
+		}
+		weights[PSEUDO_EOF] = 1;
+		return weights;
+	}
+
+	/**
+	 * the optimal code lengths for the weights within the length limit
+	 */
+	private int[] codeLengths(long[] weights) {
+		int[] res = CanonicalCode.huffmanLengths(weights);
+		if(CanonicalCode.maxLength(res) > maxCodeLength) {
+			res = CanonicalCode.limitedLengths(weights, maxCodeLength);
+		}
+		return res;
+	}
+
+	/**
+	 * replace the tree with a length-limited one if its codes are too long
+	 */
+	private void limitLengths(long[] weights) {
+		if(CanonicalCode.maxLength(CanonicalCode.lengths(root)) <= maxCodeLength) {
+			return;
+		}
+		try {
+			huff = CanonicalCode.toTree(CanonicalCode.limitedLengths(weights, maxCodeLength));
+		} catch (IOException e) {
+			//package-merge always gives a complete code
+			throw new IllegalStateException(e);
+		}
+		root = huff.root();
+	}
+
 	/**
 	 * build Huffman tree with the heap
 	 * @return the HuffTree built with the heap
@@ -68,31 +242,62 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
      */
 	@Override
 	public Map<Integer, String> makeTable() {
-		map = new HashMap<Integer, String>();
+		codes = new int[ALPH_SIZE + 1];
+		lengths = new byte[ALPH_SIZE + 1];
 		//tmp header size is for calculating the output size before compressing
 		tmpHeaderSize = BITS_PER_INT;
-		//preorder traverse the tree
-		traverseTree(root, "");
+		if(canonical) {
+			makeCanonicalTable();
+		}
+		else {
+			//preorder traverse the tree
+			traverseTree(root, 0, 0);
+		}
+		//string view of the codes for IHuffEncoder clients
+		map = new HashMap<Integer, String>();
+		for(int i = 0; i < lengths.length; i++) {
+			if(lengths[i] != 0) {
+				map.put(i, getCode(i));
+			}
+		}
 		return map;
 	}
+
+	/**
+	 * Replace the tree codes with canonical codes of the same lengths
+	 */
+	private void makeCanonicalTable() {
+		if(root == null) {
+			throw new IllegalArgumentException();
+		}
+		codeLengths = CanonicalCode.lengths(root);
+		codes = CanonicalCode.codes(codeLengths);
+		for(int i = 0; i < codeLengths.length; i++) {
+			lengths[i] = (byte)codeLengths[i];
+		}
+		tmpHeaderSize += CanonicalCode.lengthsSize(codeLengths);
+	}
 	
 	/**
      * Traverse the huff tree with preorder traversal
      * @param root is the root of the tree to traverse
-     * @param str is the code represents the path from root to a leaf
+     * @param code is the path from root to this node, one bit per level
+     * @param len is the depth of this node
      */
-	private void traverseTree(IHuffBaseNode root, String str) {
-		if(root == null) {
+	private void traverseTree(IHuffBaseNode root, int code, int len) {
+		if(root == null || len >= BITS_PER_INT) {
 			throw new IllegalArgumentException();
 		}
 		if(root.isLeaf()) {
-			map.put(((HuffLeafNode)root).element(), str);
+			int el = ((HuffLeafNode)root).element();
+			codes[el] = code;
+			lengths[el] = (byte)len;
 			tmpHeaderSize += 10;
 			return;
 		}
 		tmpHeaderSize += 1;
-		traverseTree(((HuffInternalNode)root).left(), str + "0");
-		traverseTree(((HuffInternalNode)root).right(), str + "1");
+		traverseTree(((HuffInternalNode)root).left(), code << 1, len + 1);
+		traverseTree(((HuffInternalNode)root).right(), (code << 1) | 1, len + 1);
 	}
 
 	/**
@@ -104,7 +309,14 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
      */
 	@Override
 	public String getCode(int i) {
-		return map.get(i);
+		if(i < 0 || i >= lengths.length || lengths[i] == 0) {
+			return null;
+		}
+		String code = Integer.toBinaryString(codes[i]);
+		while(code.length() < lengths[i]) {
+			code = "0" + code;
+		}
+		return code;
 	}
 
 	/**
@@ -112,6 +324,10 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
      */
 	@Override
 	public Map<Integer, Integer> showCounts() {
+		if(countMap == null && cc != null) {
+			//codes were made without a tree, the map is built on demand
+			countMap = cc.getTable();
+		}
 		return countMap;
 	}
 
@@ -129,6 +345,14 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 	 */
 	@Override
 	public int writeHeader(BitOutputStream out) {
+		//the size of this header only, the instance may be reused
+		headerSize = 0;
+		if(canonical) {
+			out.write(BITS_PER_INT, CANONICAL_MAGIC_NUMBER);
+			headerSize += BITS_PER_INT;
+			headerSize += CanonicalCode.writeLengths(out, codeLengths);
+			return headerSize;
+		}
 		// write out the magic number
 		out.write(BITS_PER_INT, MAGIC_NUMBER);
 		headerSize += BITS_PER_INT;
@@ -169,6 +393,10 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 	@Override
 	public HuffTree readHeader(BitInputStream in) throws IOException {
 		int magic = in.read(BITS_PER_INT);
+		if (magic == CANONICAL_MAGIC_NUMBER) {
+			//rebuild a tree from the canonical code lengths
+			return CanonicalCode.toTree(CanonicalCode.readLengths(in));
+		}
 		if (magic != MAGIC_NUMBER){
 		   throw new IOException("magic number not right");
 		}
@@ -176,6 +404,34 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 		HuffTree res = readTree(in);
 		return res;
 	}
+
+	/**
+	 * Read the header and build a decoder for the codes it describes. Canonical
+	 * headers go straight from code lengths to the decode tables without
+	 * building a tree.
+	 * @param magic is the magic number already read from in
+	 * @param in is source of bits for header
+	 * @return the decoder for the rest of the stream
+	 * @throws IOException if the header is bad
+	 */
+	static HuffDecoder readDecoder(int magic, BitInputStream in) throws IOException {
+		if (magic == CANONICAL_MAGIC_NUMBER) {
+			int[] codeLengths = CanonicalCode.readLengths(in);
+			return new HuffDecoder(CanonicalCode.codes(codeLengths), codeLengths);
+		}
+		if (magic == DICTIONARY_MAGIC_NUMBER) {
+			int id = in.read(BITS_PER_INT);
+			HuffDictionary dict = HuffDictionary.get(id);
+			if (dict == null) {
+				throw new IOException("unknown dictionary " + id);
+			}
+			return dict.decoder();
+		}
+		if (magic != MAGIC_NUMBER){
+		   throw new IOException("magic number not right");
+		}
+		return new HuffDecoder(readTree(in));
+	}
 	
 	/**
 	 * build the huff tree recursively, first read bit by bit, if read a 1, representing
@@ -184,7 +440,7 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 	 * @return HuffTree built by the input stream
 	 * @throws IOException
 	 */
-	private HuffTree readTree(BitInputStream in) throws IOException {
+	private static HuffTree readTree(BitInputStream in) throws IOException {
 		//leaf node
 		if(in.read(1) == 1) {
 			int el = in.read(9);
@@ -197,10 +453,29 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 	}
 
 	/**
-     * Write a compressed version of the data read by the InputStream parameter
+     * Write a compressed version of the data read by the InputStream parameter.
+     * The size in bits saturates at Integer.MAX_VALUE for outputs of 256 MB
+     * or more, <code>compressedBytes</code> has the exact size.
      */
 	@Override
 	public int write(String inFile, String outFile, boolean force) {
+		return saturate(compress(inFile, outFile, force));
+	}
+
+	/**
+	 * Write a compressed version of a file of any size. If force is false and
+	 * the compressed file would be larger than the input, nothing is written.
+	 * If force is true and coding would give more than the input and the
+	 * stored header, the input is stored as it is. Large files that look
+	 * incompressible from a sample are stored without coding them at all.
+	 * @param inFile is the file to be compressed
+	 * @param outFile is where the compressed data is written
+	 * @param force indicates if compression forced
+	 * @return the size of the compressed data in bits, whether written or
+	 * not, for a file that was taken to be incompressible from a sample the
+	 * size of the stored file
+	 */
+	public long compress(String inFile, String outFile, boolean force) {
 		//edge case check
 		if(inFile == null || outFile == null) {
 			throw new IllegalArgumentException();
@@ -208,28 +483,40 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 		if(inFile.length() == 0 || outFile.length() == 0) {
 			throw new IllegalArgumentException();
 		}
-		BitInputStream input = new BitInputStream(inFile);		
 		try {
-			makeHuffTree(input);
-			makeTable();
-			int count = 0;
-			//count the encoding size
-			for(Map.Entry<Integer, Integer> kv: countMap.entrySet()) {
-				count += map.get(kv.getKey()).length() * kv.getValue();
-			}			
-			String code = map.get(PSEUDO_EOF);
-			int len = code.length();
-			//add encoding size, header size and length of EOF together as output size
-			outputSize = count + tmpHeaderSize + len;
+			long fileSize = new File(inFile).length();
+			if(precheck && fileSize >= PRECHECK_MIN_SIZE && incompressible(inFile)) {
+				//skip counting and coding, storing it is about as small
+				inputSize = fileSize;
+				outputSize = storedSize(fileSize);
+				if(force) {
+					writeStored(inFile, outFile);
+				}
+				return outputSize;
+			}
+			//counted straight from the file, in parallel for large files
+			CharCounter counter = new CharCounter();
+			if(counter.countAllLong(new FileInputStream(inFile)) == 0) {
+				throw new IllegalArgumentException();
+			}
+			makeCodes(counter);
+			int len = lengths[PSEUDO_EOF];
+			outputSize = computeOutputSize();
 			if(outputSize > (inputSize * BITS_PER_WORD) && !force) {
 				return outputSize;
-			}			
-			BitOutputStream out = new BitOutputStream(outFile);
+			}
+			if(outputSize > storedSize(inputSize)) {
+				outputSize = storedSize(inputSize);
+				writeStored(inFile, outFile);
+				return outputSize;
+			}
+			BitOutputStream out = openOutput(outFile, outputSize / BITS_PER_WORD);
 			writeHeader(out);
-			//reset and read the file again to write the encoding
-			input.reset();
-			writeCode(input, out);			
-			out.write(len, Integer.parseInt(code, 2));	
+			//read the file again to write the encoding
+			BitInputStream input = new BufferedBitInputStream(inFile);
+			writeCode(input, out);
+			input.close();			
+			out.write(len, codes[PSEUDO_EOF]);
 			out.close();
 		} catch (IllegalArgumentException e) {			
 			System.out.print("Your input is not valid");
@@ -240,75 +527,773 @@ public class Huff implements ITreeMaker, IHuffEncoder, IHuffModel, IHuffHeader {
 	}
 	
 	/**
-	 * write the encoding part of the compressed file
-	 * @param input the stream of file to be compressed
-	 * @param out the compressed output
+	 * sample a file and test whether its entropy is too high to compress
+	 */
+	private boolean incompressible(String inFile) throws IOException {
+		CharCounter sample = new CharCounter();
+		try (FileChannel channel = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ)) {
+			sample.countSample(channel, 0, PRECHECK_SAMPLE_SIZE);
+		}
+		return sample.entropy() >= INCOMPRESSIBLE_ENTROPY;
+	}
+
+	/**
+	 * @return the size in bits of <code>len</code> bytes in stored form
+	 */
+	static long storedSize(long len) {
+		return STORED_HEADER_SIZE + len * BITS_PER_WORD;
+	}
+
+	/**
+	 * write the header of stored data
+	 */
+	static void writeStoredHeader(BitOutputStream out, long len) {
+		out.write(BITS_PER_INT, STORED_MAGIC_NUMBER);
+		out.write(BITS_PER_INT, (int)(len >>> BITS_PER_INT));
+		out.write(BITS_PER_INT, (int)len);
+	}
+
+	/**
+	 * write a file in stored form, copied in chunks
+	 */
+	private void writeStored(String inFile, String outFile) throws IOException {
+		BitOutputStream out = openOutput(outFile, inputSize);
+		try (InputStream in = new FileInputStream(inFile)) {
+			writeStored(in, inputSize, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * write <code>len</code> bytes of a stream in stored form
+	 */
+	private static void writeStored(InputStream in, long len, BitOutputStream out) throws IOException {
+		writeStoredHeader(out, len);
+		byte[] chunk = new byte[CHUNK_SIZE];
+		long left = len;
+		int n;
+		while(left > 0 && (n = in.read(chunk, 0, (int)Math.min(chunk.length, left))) != -1) {
+			out.write(chunk, 0, n);
+			left -= n;
+		}
+		if(left > 0) {
+			throw new IOException("input is shorter than " + len + " bytes");
+		}
+	}
+
+	/**
+	 * open a file for writing bits, large outputs go through a file channel
+	 * with a large direct buffer instead of an output stream
+	 * @param outFile is the name of the file
+	 * @param expectedBytes is about how many bytes will be written
+	 * @return the stream
+	 * @throws RuntimeException if the file cannot be opened
 	 */
-	private void writeCode(BitInputStream input, BitOutputStream out) {
+	static BitOutputStream openOutput(String outFile, long expectedBytes) {
+		if(expectedBytes < BufferedBitInputStream.MAP_THRESHOLD) {
+			return new BufferedBitOutputStream(outFile);
+		}
 		try {
-			int c;
-			while((c = input.read()) != -1) {
-				//get the encoding from encoding map
-				String code = map.get(c);
-				int len = code.length();
-				out.write(len, Integer.parseInt(code, 2));		
-			}
+			FileChannel channel = FileChannel.open(Paths.get(outFile), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			return new BufferedBitOutputStream(channel, BufferedBitOutputStream.LARGE_BUFFER_SIZE);
 		} catch (IOException e) {
-			e.printStackTrace();
+			throw new RuntimeException("could not create " + outFile + " " + e);
+		}
+	}
+
+	/**
+	 * count the size of the compressed output from the counts and code lengths
+	 * @return encoding size, header size and length of EOF together in bits
+	 */
+	private long computeOutputSize() {
+		long count = 0;
+		//count the encoding size
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			count += lengths[i] * CharCounter.getLongCount(cc, i);
+		}
+		return count + tmpHeaderSize + lengths[PSEUDO_EOF];
+	}
+
+	/**
+	 * @return the size in bits as an int, Integer.MAX_VALUE if it does not fit
+	 */
+	static int saturate(long bits) {
+		return (int)Math.min(bits, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the size in bytes of the compressed data of the last
+	 * <code>write</code> or file <code>uncompress</code>, header and
+	 * padding included, or what it would have been if compression did not
+	 * save space and was not forced; 0 after uncompressing a stream, whose
+	 * compressed size is not known
+	 */
+	public long compressedBytes() {
+		return (outputSize + BITS_PER_WORD - 1) / BITS_PER_WORD;
+	}
+
+	/**
+	 * @return the size in bytes of the uncompressed data of the last
+	 * <code>write</code> or <code>uncompress</code>
+	 */
+	public long uncompressedBytes() {
+		return inputSize;
+	}
+
+	/**
+	 * Compute the size of the data <code>write</code> would produce for a
+	 * stream, in the current mode, from the counts and code lengths alone.
+	 * Nothing is written, <code>uncompressedBytes</code> gives the size of
+	 * the input afterwards.
+	 * @param in is the stream to be measured, it is read to the end and closed
+	 * @return the size of the compressed data in bytes
+	 * @throws IOException if reading fails
+	 * @throws IllegalArgumentException if the input is empty
+	 */
+	public long estimate(InputStream in) throws IOException {
+		if(in == null) {
+			throw new IllegalArgumentException();
 		}
+		CharCounter counter = new CharCounter();
+		counter.countAllLong(in);
+		return estimate(counter);
 	}
 
 	/**
-     * Uncompress a previously compressed file.
+	 * Compute the size of the file <code>write</code> would produce, see
+	 * <code>estimate(InputStream)</code>. The file is counted in parallel.
+	 * @param file is the file to be measured
+	 * @return the size of the compressed file in bytes
+	 * @throws IOException if reading fails
+	 * @throws IllegalArgumentException if the file is empty
+	 */
+	public long estimate(Path file) throws IOException {
+		return estimate(file, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Estimate the size of the file <code>write</code> would produce from
+	 * evenly spaced windows of about <code>sampleBytes</code> in total. The
+	 * counts of the sample are scaled to the size of the file, so the
+	 * result is exact only for files no larger than the sample.
+	 * @param file is the file to be measured
+	 * @param sampleBytes is about how many bytes are read
+	 * @return the size of the compressed file in bytes
+	 * @throws IOException if reading fails
+	 * @throws IllegalArgumentException if the file is empty or sampleBytes
+	 * is not positive
+	 */
+	public long estimate(Path file, long sampleBytes) throws IOException {
+		if(file == null || sampleBytes <= 0) {
+			throw new IllegalArgumentException();
+		}
+		CharCounter counter = new CharCounter();
+		long size;
+		long sampled;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			size = channel.size();
+			sampled = counter.countSample(channel, 0, sampleBytes);
+		}
+		if(sampled > 0 && sampled < size) {
+			for(int i = 0; i < ALPH_SIZE; i++) {
+				long count = counter.getLongCount(i);
+				if(count > 0) {
+					//chunks seen in the sample keep a code after scaling
+					counter.setLongCount(i, Math.max(1, Math.round((double)count * size / sampled)));
+				}
+			}
+		}
+		return estimate(counter);
+	}
+
+	/**
+	 * the compressed size in bytes for counts, codes are made as for write
+	 */
+	private long estimate(CharCounter counter) {
+		if(counter.total() == 0) {
+			throw new IllegalArgumentException();
+		}
+		makeCodes(counter);
+		outputSize = Math.min(computeOutputSize(), storedSize(inputSize));
+		return compressedBytes();
+	}
+
+	/**
+	 * Write a compressed version of everything read from <code>in</code>,
+	 * reading it only once, so pipes and sockets can be compressed too. The
+	 * input is kept in memory (spilling to a temporary file when large) while
+	 * it is counted, then encoded from there. If force is false nothing is
+	 * written unless compression saves space, otherwise data that would code
+	 * to more than its stored form is stored.
+	 * @param in is the stream to be compressed, it is read to the end
+	 * @param out is where the compressed data is written, it is flushed but not closed
+	 * @param force indicates if compression forced
+	 * @return the size of the compressed data in bits
+	 * @throws IOException if reading or writing fails
+	 * @throws IllegalArgumentException if the input is empty
+	 */
+	public int write(InputStream in, OutputStream out, boolean force) throws IOException {
+		if(in == null || out == null) {
+			throw new IllegalArgumentException();
+		}
+		CharCounter counter = new CharCounter();
+		BlockBuffer buffer = new BlockBuffer();
+		try {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int n;
+			while((n = in.read(chunk)) != -1) {
+				counter.count(chunk, 0, n);
+				buffer.write(chunk, 0, n);
+			}
+			if(buffer.size() == 0) {
+				throw new IllegalArgumentException();
+			}
+			makeCodes(counter);
+			outputSize = computeOutputSize();
+			if(outputSize > (inputSize * BITS_PER_WORD) && !force) {
+				return saturate(outputSize);
+			}
+			BitOutputStream bits = new BufferedBitOutputStream(out);
+			InputStream buffered = buffer.openInputStream();
+			try {
+				if(outputSize > storedSize(inputSize)) {
+					outputSize = storedSize(inputSize);
+					writeStored(buffered, inputSize, bits);
+				}
+				else {
+					writeHeader(bits);
+					writeCode(buffered, bits);
+					bits.write(lengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+				}
+			} finally {
+				buffered.close();
+			}
+			bits.flush();
+		} finally {
+			buffer.close();
+		}
+		return saturate(outputSize);
+	}
+
+	/**
+	 * Write a compressed version of <code>len</code> bytes of an array. If
+	 * force is false nothing is written unless compression saves space,
+	 * otherwise data that would code to more than its stored form is stored.
+	 * @param src is the array holding the data to be compressed
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param out is where the compressed data is written, it is flushed but not closed
+	 * @param force indicates if compression forced
+	 * @return the size of the compressed data in bits
+	 * @throws IOException if writing fails
+	 * @throws IllegalArgumentException if there is nothing to compress
+	 */
+	public int write(byte[] src, int off, int len, OutputStream out, boolean force) throws IOException {
+		if(src == null || out == null || off < 0 || len <= 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		CharCounter counter = new CharCounter();
+		counter.count(src, off, len);
+		makeCodes(counter);
+		outputSize = computeOutputSize();
+		if(outputSize > (inputSize * BITS_PER_WORD) && !force) {
+			return saturate(outputSize);
+		}
+		BitOutputStream bits = new BufferedBitOutputStream(out);
+		if(outputSize > storedSize(len)) {
+			outputSize = storedSize(len);
+			writeStoredHeader(bits, len);
+			bits.write(src, off, len);
+			bits.flush();
+			return saturate(outputSize);
+		}
+		writeHeader(bits);
+		writeCode(src, off, len, bits);
+		bits.write(lengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+		bits.flush();
+		return saturate(outputSize);
+	}
+
+	/**
+	 * Write a compressed version of <code>in</code> using the counts of a
+	 * pre-supplied model instead of counting the input, so the input is
+	 * encoded as it is read. Chunks the model never saw are given a count of
+	 * one so that every chunk has a code.
+	 * @param in is the stream to be compressed, it is read to the end
+	 * @param out is where the compressed data is written, it is flushed but not closed
+	 * @param model holds the expected count of every chunk
+	 * @return the size of the compressed data in bits
+	 * @throws IOException if reading or writing fails
+	 */
+	public int write(InputStream in, OutputStream out, ICharCounter model) throws IOException {
+		if(in == null || out == null || model == null) {
+			throw new IllegalArgumentException();
+		}
+		CharCounter counter = new CharCounter();
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			counter.set(i, Math.max(1, model.getCount(i)));
+		}
+		makeCodes(counter);
+		BitOutputStream bits = new BufferedBitOutputStream(out);
+		writeHeader(bits);
+		long codeSize = writeCode(in, bits);
+		bits.write(lengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+		bits.flush();
+		outputSize = tmpHeaderSize + codeSize + lengths[PSEUDO_EOF];
+		return saturate(outputSize);
+	}
+
+	/**
+	 * Write a compressed version of <code>len</code> bytes of an array using
+	 * the codes of a dictionary. Only the dictionary ID is written as the
+	 * header, and the data is not counted first. The dictionary has to be
+	 * registered wherever the data is uncompressed.
+	 * @param src is the array holding the data to be compressed
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param out is where the compressed data is written, it is flushed but not closed
+	 * @param dict holds the codes to compress with
+	 * @return the size of the compressed data in bits
+	 */
+	public int write(byte[] src, int off, int len, OutputStream out, HuffDictionary dict) {
+		if(src == null || out == null || dict == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		BufferedBitOutputStream bits = new BufferedBitOutputStream(out, Math.min(len + 16, BufferedBitOutputStream.DEFAULT_BUFFER_SIZE));
+		bits.write(BITS_PER_INT, DICTIONARY_MAGIC_NUMBER);
+		bits.write(BITS_PER_INT, dict.id());
+		long size = 2 * BITS_PER_INT;
+		for(int i = off; i < off + len; i++) {
+			int c = src[i] & 0xff;
+			bits.writeBits(dict.length(c), dict.code(c));
+			size += dict.length(c);
+		}
+		bits.writeBits(dict.length(PSEUDO_EOF), dict.code(PSEUDO_EOF));
+		bits.flush();
+		inputSize = len;
+		outputSize = size + dict.length(PSEUDO_EOF);
+		return saturate(outputSize);
+	}
+
+	/**
+	 * The most bytes <code>compress</code> writes for <code>n</code> bytes
+	 * of input, plus the 8 bytes of room it needs to write whole words
+	 * straight into the destination. Data that would code to more than its
+	 * stored form is stored, which bounds the output.
+	 * @param n is the size of the input in bytes
+	 * @return the size to allocate for the destination
+	 */
+	public static int maxCompressedLength(int n) {
+		if(n < 0 || n > Integer.MAX_VALUE - STORED_HEADER_SIZE / BITS_PER_WORD - 8) {
+			throw new IllegalArgumentException();
+		}
+		return n + STORED_HEADER_SIZE / BITS_PER_WORD + 8;
+	}
+
+	/**
+	 * Compress <code>len</code> bytes of an array into another array,
+	 * without streams, see <code>compress(ByteBuffer, ByteBuffer)</code>.
+	 * @param src is the array holding the data to be compressed
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param dst is where the compressed data is written, from index 0
+	 * @return the number of bytes written to dst
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int compress(byte[] src, int off, int len, byte[] dst) {
+		if(src == null || dst == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		return compress(ByteBuffer.wrap(src, off, len), ByteBuffer.wrap(dst));
+	}
+
+	/**
+	 * Compress the remaining bytes of <code>src</code> into
+	 * <code>dst</code>, heap or direct, in the current mode. The codes are
+	 * written straight into dst when it has room for
+	 * <code>maxCompressedLength</code> bytes, otherwise through a temporary
+	 * buffer. Data that would code to more than its stored form is stored.
+	 * The position of src is moved to its limit and that of dst past the
+	 * compressed data.
+	 * @param src holds the data to be compressed
+	 * @param dst is where the compressed data is written
+	 * @return the number of bytes written to dst
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int compress(ByteBuffer src, ByteBuffer dst) {
+		if(src == null || dst == null) {
+			throw new IllegalArgumentException();
+		}
+		int len = src.remaining();
+		if(len == 0) {
+			inputSize = 0;
+			outputSize = storedSize(0);
+		}
+		else {
+			CharCounter counter = new CharCounter();
+			counter.count(src);
+			makeCodes(counter);
+			outputSize = Math.min(computeOutputSize(), storedSize(len));
+		}
+		int size = (int)compressedBytes();
+		if(size > dst.remaining()) {
+			throw new IllegalArgumentException("destination too small, " + size + " bytes needed");
+		}
+		if(dst.remaining() - size >= 8 && !dst.isReadOnly()) {
+			writeTo(src, dst);
+		}
+		else {
+			ByteBuffer tmp = ByteBuffer.allocate(size + 8);
+			writeTo(src, tmp);
+			tmp.limit(size);
+			dst.duplicate().put(tmp);
+		}
+		src.position(src.limit());
+		dst.position(dst.position() + size);
+		return size;
+	}
+
+	/**
+	 * write the compressed or stored form of src to dst, which has room for
+	 * it and 8 more bytes, positions are not changed
+	 */
+	private void writeTo(ByteBuffer src, ByteBuffer dst) {
+		BufferedBitOutputStream bits = new BufferedBitOutputStream(dst);
+		int len = src.remaining();
+		if(outputSize == storedSize(len)) {
+			writeStoredHeader(bits, len);
+			bits.flush();
+			//the header is whole bytes, the data goes after it as it is
+			ByteBuffer out = dst.duplicate();
+			out.position(dst.position() + STORED_HEADER_SIZE / BITS_PER_WORD);
+			out.put(src.duplicate());
+			return;
+		}
+		writeHeader(bits);
+		if(src.hasArray()) {
+			writeCode(src.array(), src.arrayOffset() + src.position(), len, bits);
+		}
+		else {
+			for(int i = src.position(); i < src.limit(); i++) {
+				int c = src.get(i) & 0xff;
+				bits.writeBits(lengths[c], codes[c]);
+			}
+		}
+		bits.writeBits(lengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+		bits.flush();
+	}
+
+	/**
+	 * write the encoding part of the compressed file, the input size is set
+	 * to the number of bytes read
+	 * @param input the stream of data to be compressed
+	 * @param out the compressed output
+	 * @return the number of bits written
+	 * @throws IOException if reading the input fails
+	 */
+	private long writeCode(InputStream input, BitOutputStream out) throws IOException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		long size = 0;
+		inputSize = 0;
+		int n;
+		while((n = input.read(chunk)) != -1) {
+			size += writeCode(chunk, 0, n, out);
+			inputSize += n;
+		}
+		return size;
+	}
+
+	/**
+	 * write the encoding of the bytes of an array
+	 * @return the number of bits written
+	 */
+	private long writeCode(byte[] src, int off, int len, BitOutputStream out) {
+		long size = 0;
+		for(int i = off; i < off + len; i++) {
+			//get the encoding from the code arrays
+			int c = src[i] & 0xff;
+			out.write(lengths[c], codes[c]);
+			size += lengths[c];
+		}
+		return size;
+	}
+
+	/**
+     * Uncompress a previously compressed file. The size in bits saturates at
+     * Integer.MAX_VALUE for outputs of 256 MB or more,
+     * <code>uncompressedBytes</code> has the exact size.
      */
 	@Override
 	public int uncompress(String inFile, String outFile) {
-		BitInputStream input = new BitInputStream(inFile);	
-		BitOutputStream out = new BitOutputStream(outFile);
+		return saturate(decompress(inFile, outFile));
+	}
+
+	/**
+	 * Uncompress a previously compressed file of any size.
+	 * @param inFile is the compressed file
+	 * @param outFile is where the uncompressed data is written
+	 * @return the size of the uncompressed data in bits
+	 */
+	public long decompress(String inFile, String outFile) {
+		outSize = uncompressFile(inFile, outFile);
+		outputSize = new File(inFile).length() * BITS_PER_WORD;
+		inputSize = outSize / BITS_PER_WORD;
+		return outSize;
+	}
+
+	/**
+	 * uncompress a file in whatever format it was written
+	 * @return the size of the uncompressed data in bits
+	 */
+	private long uncompressFile(String inFile, String outFile) {
+		BufferedBitInputStream input = new BufferedBitInputStream(inFile);
 		outSize = 0;
-		HuffTree newHuff;
+		int magic;
 		try {
-			newHuff = readHeader(input);	
-			IHuffBaseNode root = newHuff.root();
-			IHuffBaseNode cur = root;			
-			int bits;
-			while (true) {
-				bits = input.read(1);			
-				if (bits == -1) {
-					throw new IOException("unexpected end of input file");
-				}
-				else {
-					// use the zero/one value of the bit read to traverse Huffman coding tree
-				    // if a leaf is reached, decode the character and print
-				    // if the character is pseudo-EOF, decompression done
-					if (cur.isLeaf()) {
-						int element = ((HuffLeafNode)cur).element();
-					    if (element == PSEUDO_EOF) {
-					    	break; // out of loop
-					    }	        
-					    else {
-					    	//write character stored in leaf-node
-					    	out.write(BITS_PER_WORD, element);
-					    	System.out.println((char)element);
-					    	outSize += BITS_PER_WORD;
-					    	cur = root;
-					    }	        
-				    }
-					
-					// read a 0, go left in tree
-					if ((bits & 1) == 0) {
-						cur = ((HuffInternalNode)cur).left();
-					}
-					// read a 1, go right in tree
-					else {
-						cur = ((HuffInternalNode)cur).right();
-					}					
-				}				
-			}				
+			magic = input.read(BITS_PER_INT);
+		} catch (IOException e) {
+			magic = -1;
+		}
+		if (magic == STORED_MAGIC_NUMBER) {
+			try {
+				return copyStored(input, inFile, outFile);
+			} catch (IOException e) {
+				System.out.println("Uncompressing Error");
+				return 0;
+			} finally {
+				input.close();
+			}
+		}
+		if (magic == FRAMED_MAGIC_NUMBER || magic == ADAPTIVE_MAGIC_NUMBER || magic == WIDE_MAGIC_NUMBER) {
+			input.close();
+			IHuffModel model;
+			if (magic == FRAMED_MAGIC_NUMBER) {
+				//block container, every block is a compressed stream of its own
+				model = new BlockHuff();
+			}
+			else if (magic == ADAPTIVE_MAGIC_NUMBER) {
+				model = new AdaptiveHuff();
+			}
+			else {
+				//the chunk width is read from the header
+				model = new WideHuff(WideHuff.MIN_WIDTH);
+			}
+			//their int result may be saturated, the file has the real size
+			model.uncompress(inFile, outFile);
+			return new File(outFile).length() * BITS_PER_WORD;
+		}
+		//the output is at least as large as the compressed input
+		BitOutputStream out = openOutput(outFile, new File(inFile).length());
+		try {
+			//decode with lookup tables instead of walking the tree bit by bit
+			decodeAll(readDecoder(magic, input), input, out);
 		} catch (IOException e) {
 			System.out.println("Uncompressing Error");
 		}		
+		input.close();
 		out.close();
 		return outSize;
 	}
+
+	/**
+	 * Uncompress a stream written by one of the <code>write</code> methods,
+	 * the decoded bytes are written to <code>out</code> in chunks.
+	 * @param in is the compressed stream, it is read up to the end of the data
+	 * @param out is where the uncompressed bytes are written, it is not closed
+	 * @return the size of the uncompressed data in bits
+	 * @throws IOException if the data is not valid or reading/writing fails
+	 */
+	public int uncompress(InputStream in, OutputStream out) throws IOException {
+		outputSize = 0;
+		outSize = uncompressStream(in, out);
+		inputSize = outSize / BITS_PER_WORD;
+		return saturate(outSize);
+	}
+
+	/**
+	 * Uncompress data written by <code>compress</code> into an array,
+	 * without streams, see <code>decompress(ByteBuffer, ByteBuffer)</code>.
+	 * @param src is the array holding the compressed data
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param dst is where the uncompressed data is written, from index 0
+	 * @return the number of bytes written to dst
+	 * @throws IOException if the data is not valid
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int decompress(byte[] src, int off, int len, byte[] dst) throws IOException {
+		if(src == null || dst == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		return decompress(ByteBuffer.wrap(src, off, len), ByteBuffer.wrap(dst));
+	}
+
+	/**
+	 * Uncompress data written by <code>compress</code> or the in-memory
+	 * <code>write</code> methods from <code>src</code> into
+	 * <code>dst</code>, heap or direct, reading and writing both in place.
+	 * The position of src is moved past the compressed data, so several
+	 * compressed messages can follow each other, and that of dst past the
+	 * uncompressed data.
+	 * @param src holds the compressed data
+	 * @param dst is where the uncompressed data is written
+	 * @return the number of bytes written to dst
+	 * @throws IOException if the data is not valid or is in a format that
+	 * is only written to files, e.g., adaptive or wide chunks
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+		if(src == null || dst == null) {
+			throw new IllegalArgumentException();
+		}
+		BufferedBitInputStream input = new BufferedBitInputStream(src);
+		int magic = input.read(BITS_PER_INT);
+		int srcStart = src.position();
+		int start = dst.position();
+		int end = dst.limit();
+		int pos = start;
+		if (magic == STORED_MAGIC_NUMBER) {
+			long len = readStoredLength(input);
+			int header = STORED_HEADER_SIZE / BITS_PER_WORD;
+			if (len > src.remaining() - header) {
+				throw new IOException("unexpected end of input");
+			}
+			if (len > end - start) {
+				throw new IllegalArgumentException("destination too small, " + len + " bytes needed");
+			}
+			ByteBuffer data = src.duplicate();
+			data.position(src.position() + header);
+			data.limit(data.position() + (int)len);
+			dst.duplicate().put(data);
+			pos += (int)len;
+			src.position(data.limit());
+		}
+		else {
+			if (magic == ADAPTIVE_MAGIC_NUMBER || magic == WIDE_MAGIC_NUMBER) {
+				throw new IOException("format not supported in memory, use uncompress");
+			}
+			HuffDecoder decoder = readDecoder(magic, input);
+			int element;
+			while ((element = decoder.decode(input)) != PSEUDO_EOF) {
+				if (pos == end) {
+					throw new IllegalArgumentException("destination too small");
+				}
+				dst.put(pos++, (byte)element);
+			}
+			if (input.overrun()) {
+				throw new IOException("unexpected end of input");
+			}
+			src.position(src.position() + (int)input.bytesConsumed());
+		}
+		outputSize = (long)(src.position() - srcStart) * BITS_PER_WORD;
+		dst.position(pos);
+		inputSize = pos - start;
+		return pos - start;
+	}
+
+	/**
+	 * read the length of stored data after the magic number
+	 */
+	static long readStoredLength(BufferedBitInputStream input) throws IOException {
+		long len = input.readBits(BITS_PER_INT) << BITS_PER_INT;
+		len |= input.readBits(BITS_PER_INT);
+		if (len < 0 || input.overrun()) {
+			throw new IOException("bad length of stored data");
+		}
+		return len;
+	}
+
+	/**
+	 * copy the bytes of a stored file after its header to the output file
+	 * @return the size of the uncompressed data in bits
+	 */
+	private static long copyStored(BufferedBitInputStream input, String inFile, String outFile) throws IOException {
+		long len = readStoredLength(input);
+		long offset = STORED_HEADER_SIZE / BITS_PER_WORD;
+		try (FileChannel in = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(Paths.get(outFile), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if (in.size() - offset != len) {
+				throw new IOException("unexpected end of input file");
+			}
+			for (long done = 0; done < len; ) {
+				done += in.transferTo(offset + done, len - done, out);
+			}
+		}
+		return len * BITS_PER_WORD;
+	}
+
+	/**
+	 * uncompress a stream in whatever format it was written
+	 * @return the size of the uncompressed data in bits
+	 */
+	private long uncompressStream(InputStream in, OutputStream out) throws IOException {
+		BufferedBitInputStream input = in instanceof BufferedBitInputStream
+				? (BufferedBitInputStream)in : new BufferedBitInputStream(in);
+		int magic = input.read(BITS_PER_INT);
+		if (magic == ADAPTIVE_MAGIC_NUMBER) {
+			return new AdaptiveHuff().decode(input, out, null);
+		}
+		if (magic == STORED_MAGIC_NUMBER) {
+			long len = readStoredLength(input);
+			byte[] chunk = new byte[CHUNK_SIZE];
+			outSize = 0;
+			for(long left = len; left > 0; ) {
+				//the header is whole bytes, so this is a bulk copy
+				int n = input.read(chunk, 0, (int)Math.min(chunk.length, left));
+				if (n == -1) {
+					throw new IOException("unexpected end of input");
+				}
+				outSize += (long)n * BITS_PER_WORD;
+				emit(chunk, n, out);
+				left -= n;
+			}
+			return outSize;
+		}
+		if (magic == WIDE_MAGIC_NUMBER) {
+			BufferedBitOutputStream bits = new BufferedBitOutputStream(out);
+			long size = WideHuff.decodeAfterMagic(input, bits);
+			bits.flush();
+			return size;
+		}
+		return decodeAll(readDecoder(magic, input), input, out);
+	}
+
+	/**
+	 * decode up to PSEUDO_EOF into a chunk that is written to the output
+	 * and shown to the listener whenever it is full, never byte by byte
+	 * @return the size of the uncompressed data in bits
+	 */
+	private long decodeAll(HuffDecoder decoder, BufferedBitInputStream input, OutputStream out) throws IOException {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int n = 0;
+		outSize = 0;
+		int element;
+		while ((element = decoder.decode(input)) != PSEUDO_EOF) {
+			chunk[n++] = (byte)element;
+			if (n == chunk.length) {
+				outSize += (long)n * BITS_PER_WORD;
+				emit(chunk, n, out);
+				n = 0;
+			}
+		}
+		if (input.overrun()) {
+			throw new IOException("unexpected end of input");
+		}
+		outSize += (long)n * BITS_PER_WORD;
+		emit(chunk, n, out);
+		return outSize;
+	}
+
+	/**
+	 * write a chunk of decoded bytes after showing it to the listener
+	 */
+	private void emit(byte[] chunk, int n, OutputStream out) throws IOException {
+		if (listener != null && n > 0) {
+			listener.decoded(chunk, n, outSize / BITS_PER_WORD);
+		}
+		out.write(chunk, 0, n);
+	}
 }
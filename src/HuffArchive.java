@@ -0,0 +1,299 @@
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Reads an archive of many compressed entries written by
+ * <code>HuffArchiveWriter</code>. Opening an archive reads only the
+ * central directory at its end, listing needs nothing more and extracting
+ * an entry reads only that entry, so neither scans the archive.
+ * <P>
+ * File layout, all ints are 32 bits and all longs 64 bits, big-endian:
+ * <pre>
+ * ARCHIVE_MAGIC_NUMBER
+ * the shared dictionary as saved by <code>HuffDictionary.save</code>, if any
+ * for every entry: the entry in the canonical, dictionary or stored format of <code>Huff</code>
+ * central directory: file offset and length of the dictionary (longs, 0 if
+ * none), number of entries, then for every entry the length of its name
+ * (16 bits), the name in UTF-8, its file offset, compressed size and size
+ * (longs) and the CRC-32 of its data
+ * file offset of the central directory (long), ARCHIVE_MAGIC_NUMBER
+ * </pre>
+ * Entries are read with positional reads, so one archive can be extracted
+ * from on several threads at once.
+ */
+public class HuffArchive implements IHuffConstants, AutoCloseable {
+
+	/**
+	 * One entry of the central directory.
+	 */
+	public static class Entry {
+		private final String name;
+		private final long offset;
+		private final long compressedSize;
+		private final long size;
+		private final int crc;
+
+		Entry(String name, long offset, long compressedSize, long size, int crc) {
+			this.name = name;
+			this.offset = offset;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.crc = crc;
+		}
+
+		/**
+		 * @return the name of the entry
+		 */
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * @return the file offset of the compressed entry
+		 */
+		public long offset() {
+			return offset;
+		}
+
+		/**
+		 * @return the size of the compressed entry in bytes
+		 */
+		public long compressedSize() {
+			return compressedSize;
+		}
+
+		/**
+		 * @return the size of the entry in bytes
+		 */
+		public long size() {
+			return size;
+		}
+
+		/**
+		 * @return the CRC-32 of the data of the entry
+		 */
+		public int crc() {
+			return crc;
+		}
+
+		@Override
+		public String toString() {
+			return name + " " + size + " -> " + compressedSize + " bytes at " + offset;
+		}
+	}
+
+	//directory offset and magic number
+	private static final int FOOTER_SIZE = 12;
+
+	private static final HuffCodec codec = new HuffCodec();
+
+	private final FileChannel channel;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	private HuffDictionary dictionary;
+
+	/**
+	 * Open an archive and read its central directory.
+	 * @param file is the archive
+	 * @throws IOException if reading fails or the file is not an archive
+	 */
+	public HuffArchive(Path file) throws IOException {
+		if(file == null) {
+			throw new IllegalArgumentException();
+		}
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			readDirectory();
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * read the central directory and the dictionary from the end of the file
+	 */
+	private void readDirectory() throws IOException {
+		long size = channel.size();
+		int head = BITS_PER_INT / BITS_PER_WORD;
+		if(size < head + 20 + FOOTER_SIZE || read(0, head).getInt() != ARCHIVE_MAGIC_NUMBER) {
+			throw new IOException("not an archive");
+		}
+		ByteBuffer footer = read(size - FOOTER_SIZE, FOOTER_SIZE);
+		long directoryOffset = footer.getLong();
+		if(footer.getInt() != ARCHIVE_MAGIC_NUMBER || directoryOffset < head
+				|| size - FOOTER_SIZE - directoryOffset < 20
+				|| size - FOOTER_SIZE - directoryOffset > Integer.MAX_VALUE) {
+			throw new IOException("bad central directory");
+		}
+		ByteBuffer dir = read(directoryOffset, (int)(size - FOOTER_SIZE - directoryOffset));
+		try {
+			long dictOffset = dir.getLong();
+			long dictLength = dir.getLong();
+			int count = dir.getInt();
+			for(int i = 0; i < count; i++) {
+				byte[] name = new byte[dir.getShort() & 0xffff];
+				dir.get(name);
+				Entry entry = new Entry(new String(name, StandardCharsets.UTF_8),
+						dir.getLong(), dir.getLong(), dir.getLong(), dir.getInt());
+				if(entry.offset() < head || entry.compressedSize() < 0 || entry.size() < 0
+						|| entry.offset() + entry.compressedSize() > directoryOffset) {
+					throw new IOException("bad entry " + entry.name());
+				}
+				entries.put(entry.name(), entry);
+			}
+			if(dir.hasRemaining() || entries.size() != count) {
+				throw new IOException("bad central directory");
+			}
+			if(dictLength > 0) {
+				if(dictOffset < head || dictLength > directoryOffset - dictOffset) {
+					throw new IOException("bad dictionary offset");
+				}
+				dictionary = HuffDictionary.read(new ByteArrayInputStream(read(dictOffset, (int)dictLength).array()));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("bad central directory");
+		}
+	}
+
+	/**
+	 * read <code>len</code> bytes at a file offset
+	 */
+	private ByteBuffer read(long position, int len) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(len);
+		while(buf.hasRemaining()) {
+			int n = channel.read(buf, position + buf.position());
+			if(n == -1) {
+				throw new EOFException();
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * @return all entries in the order they were added
+	 */
+	public List<Entry> entries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	/**
+	 * @param name is the name of an entry
+	 * @return the entry, null if the archive has none by that name
+	 */
+	public Entry entry(String name) {
+		return entries.get(name);
+	}
+
+	/**
+	 * @return the shared dictionary of the archive, null if it has none
+	 */
+	public HuffDictionary dictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Extract an entry, reading only its compressed bytes.
+	 * @param name is the name of the entry
+	 * @return the data of the entry
+	 * @throws IOException if reading fails or the entry is not valid
+	 * @throws IllegalArgumentException if the archive has no such entry
+	 */
+	public byte[] read(String name) throws IOException {
+		Entry entry = entries.get(name);
+		if(entry == null) {
+			throw new IllegalArgumentException("no entry " + name);
+		}
+		return read(entry);
+	}
+
+	/**
+	 * Extract an entry, reading only its compressed bytes.
+	 * @param entry is an entry of this archive
+	 * @return the data of the entry
+	 * @throws IOException if reading fails, the entry is not valid or its
+	 * checksum does not match
+	 */
+	public byte[] read(Entry entry) throws IOException {
+		if(entry.compressedSize() > Integer.MAX_VALUE || entry.size() > Integer.MAX_VALUE) {
+			throw new IOException("entry too large");
+		}
+		ByteBuffer data = read(entry.offset(), (int)entry.compressedSize());
+		byte[] out = new byte[(int)entry.size()];
+		int len;
+		try {
+			if(data.remaining() >= 2 * BITS_PER_INT / BITS_PER_WORD && data.getInt(0) == DICTIONARY_MAGIC_NUMBER) {
+				len = decode(data, out);
+			}
+			else {
+				len = codec.decompress(data, ByteBuffer.wrap(out));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IOException("entry longer than its size", e);
+		}
+		if(len != out.length) {
+			throw new IOException("entry length does not match");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out);
+		if((int)crc.getValue() != entry.crc()) {
+			throw new IOException("checksum does not match for " + entry.name());
+		}
+		return out;
+	}
+
+	/**
+	 * Extract an entry to a stream.
+	 * @param name is the name of the entry
+	 * @param out is where the data is written, it is not closed
+	 * @throws IOException if reading or writing fails or the entry is not valid
+	 * @throws IllegalArgumentException if the archive has no such entry
+	 */
+	public void extract(String name, OutputStream out) throws IOException {
+		out.write(read(name));
+	}
+
+	/**
+	 * decode an entry compressed with the shared dictionary
+	 * @return the number of bytes decoded
+	 */
+	private int decode(ByteBuffer data, byte[] out) throws IOException {
+		BufferedBitInputStream in = new BufferedBitInputStream(data);
+		in.read(BITS_PER_INT);
+		int id = in.read(BITS_PER_INT);
+		if(dictionary == null || dictionary.id() != id) {
+			throw new IOException("unknown dictionary " + id);
+		}
+		HuffDecoder decoder = dictionary.decoder();
+		int n = 0;
+		int ch;
+		while((ch = decoder.decode(in)) != PSEUDO_EOF) {
+			if(n == out.length) {
+				throw new IOException("entry longer than its size");
+			}
+			out[n++] = (byte)ch;
+		}
+		if(in.overrun()) {
+			throw new IOException("unexpected end of input");
+		}
+		return n;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
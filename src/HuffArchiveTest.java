@@ -0,0 +1,156 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Tests for HuffArchive and HuffArchiveWriter.
+ */
+public class HuffArchiveTest {
+
+	private static final String SAMPLE = "the quick brown fox jumps over the lazy dog, "
+			+ "then the dog sleeps and the fox runs into the forest. ";
+
+	/**
+	 * write text, random bytes and an empty entry, then list the archive
+	 * and extract the entries in another order
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		File file = File.createTempFile("archive", ".ha");
+		try {
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < 200; i++) {
+				sb.append(SAMPLE);
+			}
+			byte[] text = sb.toString().getBytes("UTF-8");
+			byte[] noise = new byte[3000];
+			new Random(1).nextBytes(noise);
+			try (HuffArchiveWriter writer = new HuffArchiveWriter(file.toPath())) {
+				assertTrue(writer.add("dir/text.txt", text, 0, text.length).compressedSize() < text.length);
+				//stored, 12 bytes of header
+				assertEquals(noise.length + 12, writer.add("noise.bin", noise, 0, noise.length).compressedSize());
+				writer.add("empty", new byte[0], 0, 0);
+			}
+			try (HuffArchive archive = new HuffArchive(file.toPath())) {
+				List<HuffArchive.Entry> entries = archive.entries();
+				assertEquals(3, entries.size());
+				assertEquals("dir/text.txt", entries.get(0).name());
+				assertEquals(text.length, entries.get(0).size());
+				assertEquals("empty", entries.get(2).name());
+				assertNull(archive.entry("missing"));
+				assertArrayEquals(new byte[0], archive.read("empty"));
+				assertArrayEquals(noise, archive.read("noise.bin"));
+				assertArrayEquals(text, archive.read("dir/text.txt"));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * test that short entries are compressed with the shared dictionary
+	 * and that the dictionary is read back from the archive
+	 */
+	@Test
+	public final void testDictionary() throws IOException {
+		File file = File.createTempFile("archive", ".ha");
+		try {
+			HuffDictionary dict = HuffDictionary.train(1234, new ByteArrayInputStream(SAMPLE.getBytes("UTF-8")));
+			byte[] msg = "the fox and the dog sleep, then the dog runs over the fox".getBytes("UTF-8");
+			try (HuffArchiveWriter writer = new HuffArchiveWriter(file.toPath(), dict)) {
+				for(int i = 0; i < 10; i++) {
+					HuffArchive.Entry entry = writer.add("msg" + i, msg, 0, msg.length);
+					assertTrue(entry.compressedSize() < msg.length);
+				}
+			}
+			try (HuffArchive archive = new HuffArchive(file.toPath())) {
+				assertEquals(1234, archive.dictionary().id());
+				for(HuffArchive.Entry entry : archive.entries()) {
+					assertArrayEquals(msg, archive.read(entry));
+				}
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * test that a damaged entry is detected by its checksum
+	 */
+	@Test(expected = IOException.class)
+	public final void testChecksum() throws IOException {
+		File file = File.createTempFile("archive", ".ha");
+		try {
+			byte[] noise = new byte[100];
+			new Random(2).nextBytes(noise);
+			HuffArchive.Entry entry;
+			try (HuffArchiveWriter writer = new HuffArchiveWriter(file.toPath())) {
+				entry = writer.add("noise.bin", noise, 0, noise.length);
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(entry.offset() + entry.compressedSize() - 1);
+				raf.write(noise[noise.length - 1] ^ 1);
+			}
+			try (HuffArchive archive = new HuffArchive(file.toPath())) {
+				archive.read("noise.bin");
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * test that an entry name can be used only once
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testDuplicateName() throws IOException {
+		File file = File.createTempFile("archive", ".ha");
+		try (HuffArchiveWriter writer = new HuffArchiveWriter(file.toPath())) {
+			writer.add("a", new byte[] {1}, 0, 1);
+			writer.add("a", new byte[] {2}, 0, 1);
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * test that once a write has failed, later adds and close throw too, on
+	 * a device that is always full
+	 */
+	@Test
+	public final void testBroken() throws IOException {
+		File full = new File("/dev/full");
+		Assume.assumeTrue(full.exists());
+		byte[] noise = new byte[1 << 17];
+		new Random(3).nextBytes(noise);
+		HuffArchiveWriter writer = new HuffArchiveWriter(full.toPath());
+		try {
+			writer.add("noise.bin", noise, 0, noise.length);
+			fail("the write did not fail");
+		} catch (IOException e) {
+			//the device is full
+		}
+		try {
+			writer.add("a", new byte[] {1}, 0, 1);
+			fail("add after a failed write");
+		} catch (IOException e) {
+			assertEquals("archive is broken by an earlier error", e.getMessage());
+		}
+		for(int i = 0; i < 2; i++) {
+			try {
+				writer.close();
+				fail("close after a failed write");
+			} catch (IOException e) {
+				assertEquals("archive is broken by an earlier error", e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Writes many entries into one archive file, see <code>HuffArchive</code>
+ * for the layout and for reading it. Every entry is compressed on its own
+ * with a canonical code of its own, or with the shared dictionary if the
+ * archive has one and that is smaller, or stored if neither makes it
+ * smaller. The central directory is written by <code>close</code>.
+ * <P>
+ * An entry is compressed in memory, so it has to be smaller than 2 GB.
+ * A writer is not thread-safe. Once writing the archive fails the writer
+ * is broken, every later <code>add</code> and <code>close</code> throws.
+ */
+public class HuffArchiveWriter implements IHuffConstants, AutoCloseable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int MAX_NAME_LENGTH = 0xffff;
+
+	private final HuffCodec codec = new HuffCodec();
+	private final DataOutputStream out;
+	private final HuffDictionary dictionary;
+	private final List<HuffArchive.Entry> entries = new ArrayList<HuffArchive.Entry>();
+	private final Set<String> names = new HashSet<String>();
+	private final CRC32 crc = new CRC32();
+	//reused for the output of every entry
+	private byte[] buf = new byte[0];
+	private ByteArrayOutputStream dictBytes;
+	private long dictOffset;
+	private long dictLength;
+	private long offset;
+	private boolean closed;
+	//set by the first failed write, the file is of no use after it
+	private boolean failed;
+
+	/**
+	 * class Constructor for an archive without a shared dictionary
+	 * @param file is where the archive is written, an existing file is replaced
+	 * @throws IOException if the file cannot be created
+	 */
+	public HuffArchiveWriter(Path file) throws IOException {
+		this(file, null);
+	}
+
+	/**
+	 * class Constructor
+	 * @param file is where the archive is written, an existing file is replaced
+	 * @param dictionary is saved in the archive and used for every entry it
+	 * compresses better than a code of the entry's own, may be null
+	 * @throws IOException if the file cannot be created
+	 */
+	public HuffArchiveWriter(Path file, HuffDictionary dictionary) throws IOException {
+		if(file == null) {
+			throw new IllegalArgumentException();
+		}
+		this.dictionary = dictionary;
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+		try {
+			out.writeInt(ARCHIVE_MAGIC_NUMBER);
+			offset = BITS_PER_INT / BITS_PER_WORD;
+			if(dictionary != null) {
+				ByteArrayOutputStream saved = new ByteArrayOutputStream();
+				dictionary.save(saved);
+				out.write(saved.toByteArray());
+				dictOffset = offset;
+				dictLength = saved.size();
+				offset += dictLength;
+				dictBytes = new ByteArrayOutputStream(BUFFER_SIZE);
+			}
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Add a file as an entry.
+	 * @param name is the name of the entry, unique in the archive
+	 * @param file is the file to be added
+	 * @return the entry as it is in the central directory
+	 * @throws IOException if reading the file or writing the archive fails
+	 */
+	public HuffArchive.Entry add(String name, Path file) throws IOException {
+		byte[] data = Files.readAllBytes(file);
+		return add(name, data, 0, data.length);
+	}
+
+	/**
+	 * Add <code>len</code> bytes of an array as an entry.
+	 * @param name is the name of the entry, unique in the archive
+	 * @param src is the array holding the data of the entry
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @return the entry as it is in the central directory
+	 * @throws IOException if writing the archive fails or failed before
+	 * @throws IllegalArgumentException if the name is empty, too long or
+	 * already in the archive
+	 */
+	public HuffArchive.Entry add(String name, byte[] src, int off, int len) throws IOException {
+		if(name == null || name.isEmpty() || src == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		if(name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_LENGTH || names.contains(name)) {
+			throw new IllegalArgumentException("bad or duplicate entry name " + name);
+		}
+		if(failed) {
+			throw new IOException("archive is broken by an earlier error");
+		}
+		if(closed) {
+			throw new IOException("archive is closed");
+		}
+		int max = HuffCodec.maxCompressedLength(len);
+		if(buf.length < max) {
+			buf = new byte[max];
+		}
+		int size = codec.compress(src, off, len, buf);
+		byte[] data = buf;
+		if(dictionary != null) {
+			dictBytes.reset();
+			new Huff().write(src, off, len, dictBytes, dictionary);
+			if(dictBytes.size() < size) {
+				size = dictBytes.size();
+				data = dictBytes.toByteArray();
+			}
+		}
+		crc.reset();
+		crc.update(src, off, len);
+		try {
+			out.write(data, 0, size);
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		}
+		HuffArchive.Entry entry = new HuffArchive.Entry(name, offset, size, len, (int)crc.getValue());
+		offset += size;
+		entries.add(entry);
+		names.add(name);
+		return entry;
+	}
+
+	/**
+	 * @return the entries added so far, in order
+	 */
+	public List<HuffArchive.Entry> entries() {
+		return new ArrayList<HuffArchive.Entry>(entries);
+	}
+
+	/**
+	 * Write the central directory and close the file.
+	 * @throws IOException if writing the archive fails or failed before
+	 */
+	@Override
+	public void close() throws IOException {
+		if(failed) {
+			if(!closed) {
+				closed = true;
+				try {
+					out.close();
+				} catch (IOException e) {
+					//the earlier error is the one that matters
+				}
+			}
+			throw new IOException("archive is broken by an earlier error");
+		}
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			long directoryOffset = offset;
+			out.writeLong(dictOffset);
+			out.writeLong(dictLength);
+			out.writeInt(entries.size());
+			for(HuffArchive.Entry entry : entries) {
+				byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+				out.writeShort(name.length);
+				out.write(name);
+				out.writeLong(entry.offset());
+				out.writeLong(entry.compressedSize());
+				out.writeLong(entry.size());
+				out.writeInt(entry.crc());
+			}
+			out.writeLong(directoryOffset);
+			out.writeInt(ARCHIVE_MAGIC_NUMBER);
+			out.flush();
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		} finally {
+			out.close();
+		}
+	}
+}
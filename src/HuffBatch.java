@@ -0,0 +1,494 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Compresses many files, each file a job run with its own
+ * <code>Huff</code> on an executor. By default the executor is a fixed pool
+ * with one thread per processor, any executor can be given instead, e.g., a
+ * virtual thread per task executor where the runtime has one.
+ * <P>
+ * At most <code>maxPending</code> jobs are queued or running at a time,
+ * <code>submit</code> blocks until a job finishes when there are that many,
+ * so walking a large tree never gets far ahead of the compression.
+ * <P>
+ * Every job gives a <code>Result</code> with its sizes, time and status, and
+ * the batch keeps totals over all finished jobs for <code>report</code>.
+ * <code>cancel</code> stops the jobs that have not started yet, jobs that
+ * are running are finished.
+ */
+public class HuffBatch implements AutoCloseable {
+
+	/**
+	 * What happened to one file.
+	 */
+	public enum Status {
+		/** written in compressed form */
+		COMPRESSED,
+		/** coding did not make it smaller, written in stored form */
+		STORED,
+		/** not written, coding would not make it smaller or it is empty */
+		SKIPPED,
+		/** compressing or writing failed */
+		FAILED,
+		/** not started before the batch was cancelled */
+		CANCELLED
+	}
+
+	/**
+	 * The result of one job.
+	 */
+	public static class Result {
+		private final Path in;
+		private final Path out;
+		private final Status status;
+		private final long inputBytes;
+		private final long outputBytes;
+		private final long nanos;
+		private final Exception error;
+
+		Result(Path in, Path out, Status status, long inputBytes, long outputBytes, long nanos, Exception error) {
+			this.in = in;
+			this.out = out;
+			this.status = status;
+			this.inputBytes = inputBytes;
+			this.outputBytes = outputBytes;
+			this.nanos = nanos;
+			this.error = error;
+		}
+
+		/**
+		 * @return the file that was compressed
+		 */
+		public Path input() {
+			return in;
+		}
+
+		/**
+		 * @return the file that was written, it does not exist if nothing was
+		 */
+		public Path output() {
+			return out;
+		}
+
+		/**
+		 * @return what happened to the file
+		 */
+		public Status status() {
+			return status;
+		}
+
+		/**
+		 * @return the size of the input in bytes
+		 */
+		public long inputBytes() {
+			return inputBytes;
+		}
+
+		/**
+		 * @return the size of the output in bytes, 0 if nothing was written
+		 */
+		public long outputBytes() {
+			return outputBytes;
+		}
+
+		/**
+		 * @return the time the job took in nanoseconds
+		 */
+		public long nanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return why the job failed, null if it did not
+		 */
+		public Exception error() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return in + " -> " + out + ": " + status + ", " + inputBytes + " -> " + outputBytes
+					+ " bytes in " + nanos / 1000000 + " ms" + (error == null ? "" : ", " + error);
+		}
+	}
+
+	/**
+	 * Totals over the jobs of a batch.
+	 */
+	public static class Report {
+		private final long[] jobs;
+		private final long inputBytes;
+		private final long outputBytes;
+		private final long nanos;
+
+		Report(long[] jobs, long inputBytes, long outputBytes, long nanos) {
+			this.jobs = jobs;
+			this.inputBytes = inputBytes;
+			this.outputBytes = outputBytes;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @param status is a status
+		 * @return the number of finished jobs with this status
+		 */
+		public long jobs(Status status) {
+			return jobs[status.ordinal()];
+		}
+
+		/**
+		 * @return the number of finished jobs
+		 */
+		public long jobs() {
+			long n = 0;
+			for(long j : jobs) {
+				n += j;
+			}
+			return n;
+		}
+
+		/**
+		 * @return the total size of the inputs of finished jobs in bytes
+		 */
+		public long inputBytes() {
+			return inputBytes;
+		}
+
+		/**
+		 * @return the total size of everything written in bytes
+		 */
+		public long outputBytes() {
+			return outputBytes;
+		}
+
+		/**
+		 * @return the time since the batch was created in nanoseconds
+		 */
+		public long nanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return the input in MB compressed per second of wall time
+		 */
+		public double throughput() {
+			return nanos == 0 ? 0 : inputBytes / 1e6 / (nanos / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(jobs()).append(" jobs (");
+			for(Status status : Status.values()) {
+				sb.append(status.ordinal() == 0 ? "" : ", ").append(jobs(status)).append(' ')
+						.append(status.name().toLowerCase());
+			}
+			sb.append(String.format("), %d -> %d bytes in %.3f s, %.1f MB/s",
+					inputBytes, outputBytes, nanos / 1e9, throughput()));
+			return sb.toString();
+		}
+	}
+
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final int maxPending;
+	private final Semaphore pending;
+	private final long start = System.nanoTime();
+	//finished jobs per status, then input and output bytes
+	private final AtomicLongArray totals = new AtomicLongArray(Status.values().length + 2);
+	private volatile boolean cancelled;
+	private volatile boolean closed;
+	private volatile boolean force;
+	private volatile boolean canonical;
+
+	/**
+	 * class Constructor, one thread per processor and up to twice as many
+	 * jobs pending
+	 */
+	public HuffBatch() {
+		this(Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * class Constructor
+	 * @param threads is the number of jobs run at a time
+	 * @param maxPending is the number of jobs queued or running before
+	 * <code>submit</code> blocks
+	 */
+	public HuffBatch(int threads, int maxPending) {
+		this(Executors.newFixedThreadPool(checkThreads(threads)), maxPending, true);
+	}
+
+	/**
+	 * class Constructor
+	 * @param executor runs the jobs, it is not shut down by <code>close</code>
+	 * @param maxPending is the number of jobs queued or running before
+	 * <code>submit</code> blocks
+	 */
+	public HuffBatch(ExecutorService executor, int maxPending) {
+		this(executor, maxPending, false);
+	}
+
+	private HuffBatch(ExecutorService executor, int maxPending, boolean ownExecutor) {
+		if(executor == null || maxPending < 1) {
+			throw new IllegalArgumentException();
+		}
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+		this.maxPending = maxPending;
+		pending = new Semaphore(maxPending);
+	}
+
+	private static int checkThreads(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException();
+		}
+		return threads;
+	}
+
+	/**
+	 * @param force is passed to <code>Huff.compress</code>, if false files that
+	 * would not get smaller are skipped, if true they are stored
+	 */
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
+	/**
+	 * @param canonical is passed to <code>Huff.setCanonical</code>
+	 */
+	public void setCanonical(boolean canonical) {
+		this.canonical = canonical;
+	}
+
+	/**
+	 * Queue a file to be compressed, blocking while <code>maxPending</code>
+	 * jobs are queued or running. An existing output file is replaced.
+	 * @param in is the file to be compressed
+	 * @param out is where the compressed data is written
+	 * @return the result of the job, a cancelled future gives no result
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws IllegalArgumentException if in and out are the same file
+	 * @throws IllegalStateException if the batch is closed
+	 */
+	public Future<Result> submit(Path in, Path out) throws InterruptedException {
+		if(in == null || out == null || in.toAbsolutePath().normalize().equals(out.toAbsolutePath().normalize())) {
+			throw new IllegalArgumentException();
+		}
+		if(closed) {
+			throw new IllegalStateException("batch is closed");
+		}
+		pending.acquire();
+		FutureTask<Result> task = new FutureTask<Result>(() -> compress(in, out)) {
+			@Override
+			protected void done() {
+				pending.release();
+			}
+		};
+		try {
+			executor.execute(task);
+		} catch (RuntimeException e) {
+			pending.release();
+			throw e;
+		}
+		return task;
+	}
+
+	/**
+	 * Queue every pair of files in order, see <code>submit</code>.
+	 * @param pairs holds the file to be compressed and the output of every job
+	 * @return the results of the jobs in the same order
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public List<Future<Result>> submitAll(List<Path[]> pairs) throws InterruptedException {
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		for(Path[] pair : pairs) {
+			if(pair.length != 2) {
+				throw new IllegalArgumentException();
+			}
+			results.add(submit(pair[0], pair[1]));
+		}
+		return results;
+	}
+
+	/**
+	 * Queue every regular file under a directory. The output of a file is
+	 * at the same relative path under <code>outDir</code> with
+	 * <code>suffix</code> appended, directories are created as needed.
+	 * Files are queued while the tree is walked.
+	 * @param inDir is the root of the tree to be compressed
+	 * @param outDir is the root of the output tree, it may not be inside inDir
+	 * @param suffix is appended to the name of every output file
+	 * @return the results of the jobs in the order of the walk
+	 * @throws IOException if walking the tree or creating a directory fails
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public List<Future<Result>> submitTree(Path inDir, Path outDir, String suffix) throws IOException, InterruptedException {
+		if(inDir == null || outDir == null || suffix == null || !Files.isDirectory(inDir)) {
+			throw new IllegalArgumentException();
+		}
+		Path root = inDir.toAbsolutePath().normalize();
+		Path target = outDir.toAbsolutePath().normalize();
+		if(target.startsWith(root)) {
+			throw new IllegalArgumentException("output inside the input tree");
+		}
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		try (Stream<Path> walk = Files.walk(root)) {
+			Iterator<Path> files = walk.filter(Files::isRegularFile).iterator();
+			while(files.hasNext() && !cancelled) {
+				Path in = files.next();
+				Path out = target.resolve(root.relativize(in).toString() + suffix);
+				Files.createDirectories(out.getParent());
+				results.add(submit(in, out));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * compress one file, never throws
+	 */
+	private Result compress(Path in, Path out) {
+		long begin = System.nanoTime();
+		if(cancelled) {
+			return finish(new Result(in, out, Status.CANCELLED, 0, 0, 0, null));
+		}
+		long inputBytes = 0;
+		try {
+			inputBytes = Files.size(in);
+			Files.deleteIfExists(out);
+			if(inputBytes == 0) {
+				return finish(new Result(in, out, Status.SKIPPED, 0, 0, System.nanoTime() - begin, null));
+			}
+			Huff huff = new Huff();
+			huff.setCanonical(canonical);
+			long bits = huff.compress(in.toString(), out.toString(), force);
+			long outputBytes = (bits + IHuffConstants.BITS_PER_WORD - 1) / IHuffConstants.BITS_PER_WORD;
+			//Huff.compress swallows its I/O errors, so go by the size it
+			//returns: larger than the input is only written when forced,
+			//this includes the stored size the precheck returns
+			if(!force && bits > inputBytes * IHuffConstants.BITS_PER_WORD) {
+				return finish(new Result(in, out, Status.SKIPPED, inputBytes, 0, System.nanoTime() - begin, null));
+			}
+			if(!Files.exists(out)) {
+				throw new IOException("nothing written, expected " + outputBytes + " bytes");
+			}
+			if(Files.size(out) != outputBytes) {
+				throw new IOException("output is " + Files.size(out) + " bytes, expected " + outputBytes);
+			}
+			Status status = bits == Huff.storedSize(inputBytes) ? Status.STORED : Status.COMPRESSED;
+			return finish(new Result(in, out, status, inputBytes, outputBytes, System.nanoTime() - begin, null));
+		} catch (IOException | RuntimeException e) {
+			return finish(new Result(in, out, Status.FAILED, inputBytes, 0, System.nanoTime() - begin, e));
+		}
+	}
+
+	/**
+	 * add a result to the totals
+	 */
+	private Result finish(Result result) {
+		int n = Status.values().length;
+		totals.incrementAndGet(result.status().ordinal());
+		totals.addAndGet(n, result.inputBytes());
+		totals.addAndGet(n + 1, result.outputBytes());
+		return result;
+	}
+
+	/**
+	 * Stop the batch, jobs that have not started finish as CANCELLED and
+	 * <code>submitTree</code> stops walking. Running jobs are not interrupted.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if <code>cancel</code> was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return the totals over the jobs finished so far
+	 */
+	public Report report() {
+		int n = Status.values().length;
+		long[] jobs = new long[n];
+		for(int i = 0; i < n; i++) {
+			jobs[i] = totals.get(i);
+		}
+		return new Report(jobs, totals.get(n), totals.get(n + 1), System.nanoTime() - start);
+	}
+
+	/**
+	 * Stop taking jobs, wait for all queued jobs and shut down the executor
+	 * if the batch made it.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void awaitCompletion() throws InterruptedException {
+		closed = true;
+		if(ownExecutor) {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		else {
+			//every permit back means nothing is queued or running
+			pending.acquire(maxPending);
+			pending.release(maxPending);
+		}
+	}
+
+	/**
+	 * See <code>awaitCompletion</code>. If interrupted while waiting it
+	 * returns with the interrupt flag set and the jobs still running.
+	 */
+	@Override
+	public void close() {
+		try {
+			awaitCompletion();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Compress a directory tree and print the results that are not
+	 * COMPRESSED and the report.
+	 * Run with <code>java HuffBatch inDir outDir [threads]</code>.
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.out.println("usage: java HuffBatch inDir outDir [threads]");
+			return;
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		try (HuffBatch batch = new HuffBatch(threads, 2 * threads)) {
+			List<Future<Result>> results = batch.submitTree(Paths.get(args[0]), Paths.get(args[1]), ".huff");
+			for(Future<Result> result : results) {
+				try {
+					if(result.get().status() != Status.COMPRESSED) {
+						System.out.println(result.get());
+					}
+				} catch (ExecutionException e) {
+					System.out.println(e.getCause());
+				}
+			}
+			System.out.println(batch.report());
+		}
+	}
+}
@@ -0,0 +1,192 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+/**
+ * Tests for HuffBatch.
+ */
+public class HuffBatchTest {
+
+	/**
+	 * remove a temporary directory and everything in it
+	 */
+	private static void delete(Path dir) throws IOException {
+		try (Stream<Path> walk = Files.walk(dir)) {
+			walk.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	/**
+	 * compress a tree holding text, random bytes and an empty file and test
+	 * the status of every job, the report and that the output uncompresses
+	 */
+	@Test
+	public final void testTree() throws Exception {
+		Path in = Files.createTempDirectory("batchIn");
+		Path out = Files.createTempDirectory("batchOut");
+		try {
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < 2000; i++) {
+				sb.append("the quick brown fox jumps over the lazy dog ").append(i % 10);
+			}
+			Files.createDirectories(in.resolve("sub"));
+			Files.write(in.resolve("sub/text.txt"), sb.toString().getBytes("UTF-8"));
+			byte[] noise = new byte[5000];
+			new Random(1).nextBytes(noise);
+			Files.write(in.resolve("noise.bin"), noise);
+			Files.write(in.resolve("empty"), new byte[0]);
+
+			List<HuffBatch.Result> results = new ArrayList<HuffBatch.Result>();
+			HuffBatch.Report report;
+			try (HuffBatch batch = new HuffBatch(2, 2)) {
+				for(Future<HuffBatch.Result> result : batch.submitTree(in, out, ".hf")) {
+					results.add(result.get());
+				}
+				report = batch.report();
+			}
+			assertEquals(3, results.size());
+			for(HuffBatch.Result result : results) {
+				String name = result.input().getFileName().toString();
+				if(name.equals("text.txt")) {
+					assertEquals(HuffBatch.Status.COMPRESSED, result.status());
+					assertEquals(out.resolve("sub/text.txt.hf"), result.output());
+					assertEquals(Files.size(result.output()), result.outputBytes());
+					Path back = out.resolve("back.txt");
+					new Huff().decompress(result.output().toString(), back.toString());
+					assertArrayEquals(Files.readAllBytes(result.input()), Files.readAllBytes(back));
+				}
+				else {
+					assertEquals(HuffBatch.Status.SKIPPED, result.status());
+					assertFalse(Files.exists(result.output()));
+				}
+			}
+			assertEquals(3, report.jobs());
+			assertEquals(1, report.jobs(HuffBatch.Status.COMPRESSED));
+			assertEquals(2, report.jobs(HuffBatch.Status.SKIPPED));
+			assertEquals(sb.length() + noise.length, report.inputBytes());
+		} finally {
+			delete(in);
+			delete(out);
+		}
+	}
+
+	/**
+	 * test that incompressible files are stored when forced
+	 */
+	@Test
+	public final void testForceStores() throws Exception {
+		Path dir = Files.createTempDirectory("batch");
+		try {
+			byte[] noise = new byte[5000];
+			new Random(2).nextBytes(noise);
+			Path in = dir.resolve("noise.bin");
+			Files.write(in, noise);
+			List<Path[]> pairs = new ArrayList<Path[]>();
+			pairs.add(new Path[] {in, dir.resolve("noise.hf")});
+			try (HuffBatch batch = new HuffBatch(1, 1)) {
+				batch.setForce(true);
+				HuffBatch.Result result = batch.submitAll(pairs).get(0).get();
+				assertEquals(HuffBatch.Status.STORED, result.status());
+				assertEquals(noise.length + 12, result.outputBytes());
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * test that jobs not started when the batch is cancelled write nothing
+	 */
+	@Test
+	public final void testCancel() throws Exception {
+		Path dir = Files.createTempDirectory("batch");
+		try {
+			Path in = dir.resolve("text.txt");
+			Files.write(in, "aaaabbbcc".getBytes("UTF-8"));
+			try (HuffBatch batch = new HuffBatch(1, 4)) {
+				batch.cancel();
+				HuffBatch.Result result = batch.submit(in, dir.resolve("text.hf")).get();
+				assertEquals(HuffBatch.Status.CANCELLED, result.status());
+				assertFalse(Files.exists(result.output()));
+				assertEquals(1, batch.report().jobs(HuffBatch.Status.CANCELLED));
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * block the only thread, fill the queue and cancel, then test that a
+	 * blocked submit returns and the queued jobs come back cancelled
+	 */
+	@Test
+	public final void testCancelQueued() throws Exception {
+		Path dir = Files.createTempDirectory("batch");
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			Path in = dir.resolve("text.txt");
+			Files.write(in, "aaaabbbcc".getBytes("UTF-8"));
+			executor.execute(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			started.await();
+			List<Future<HuffBatch.Result>> results = new ArrayList<Future<HuffBatch.Result>>();
+			try (HuffBatch batch = new HuffBatch(executor, 2)) {
+				results.add(batch.submit(in, dir.resolve("a.hf")));
+				results.add(batch.submit(in, dir.resolve("b.hf")));
+				List<Future<HuffBatch.Result>> third = new ArrayList<Future<HuffBatch.Result>>();
+				Thread submitter = new Thread(() -> {
+					try {
+						third.add(batch.submit(in, dir.resolve("c.hf")));
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				});
+				submitter.start();
+				//the queue is full, so it waits for a permit
+				long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+				while(submitter.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+					Thread.sleep(1);
+				}
+				assertEquals(Thread.State.WAITING, submitter.getState());
+				assertFalse(results.get(0).isDone());
+				batch.cancel();
+				release.countDown();
+				submitter.join(10000);
+				assertFalse(submitter.isAlive());
+				assertEquals(1, third.size());
+				results.addAll(third);
+			}
+			for(Future<HuffBatch.Result> result : results) {
+				assertEquals(HuffBatch.Status.CANCELLED, result.get().status());
+				assertFalse(Files.exists(result.get().output()));
+			}
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+			delete(dir);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stateless, thread-safe facade for in-memory compression. Unlike
+ * <code>Huff</code>, which keeps the tree, the codes and the sizes of the
+ * last call in its fields, a codec keeps nothing between calls, so one
+ * instance can be shared by any number of threads.
+ * <P>
+ * The scratch state of a call, i.e., the histogram, the weights, the code
+ * lengths and codes and the decode tables, lives in a context per thread
+ * that is reused by every call on that thread. When a message has the same
+ * code lengths as the last one decoded on the thread, its decode tables
+ * are reused as well.
+ * <P>
+ * The output is the canonical or stored format of <code>Huff</code>, so
+ * either side can be a <code>Huff</code>: <code>decompress</code> also
+ * reads the tree and dictionary formats.
+ */
+public class HuffCodec implements IHuffConstants {
+
+	private final int maxCodeLength;
+	private final ThreadLocal<Context> contexts = ThreadLocal.withInitial(Context::new);
+
+	/**
+	 * scratch state of one thread
+	 */
+	private static class Context {
+		CharCounter counter = new CharCounter();
+		long[] weights = new long[ALPH_SIZE + 1];
+		long[] sorted = new long[ALPH_SIZE + 1];
+		int[] symbols = new int[ALPH_SIZE + 1];
+		int[] lengths = new int[ALPH_SIZE + 1];
+		int[] codes = new int[ALPH_SIZE + 1];
+		//lengths read from a header, and those the decoder was built for
+		int[] headerLengths = new int[ALPH_SIZE + 1];
+		int[] decoderLengths = new int[ALPH_SIZE + 1];
+		HuffDecoder decoder;
+		ByteBuffer spill;
+	}
+
+	/**
+	 * class Constructor, codes are at most Huff.DEFAULT_MAX_CODE_LENGTH bits
+	 */
+	public HuffCodec() {
+		this(Huff.DEFAULT_MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * class Constructor
+	 * @param maxCodeLength is the longest code allowed, 9 to 31
+	 * @throws IllegalArgumentException if the limit cannot hold all chunks
+	 */
+	public HuffCodec(int maxCodeLength) {
+		if((1L << maxCodeLength) <= ALPH_SIZE || maxCodeLength >= BITS_PER_INT) {
+			throw new IllegalArgumentException();
+		}
+		this.maxCodeLength = maxCodeLength;
+	}
+
+	/**
+	 * @param n is the size of the input in bytes
+	 * @return the size to allocate for the destination of <code>compress</code>
+	 * @see Huff#maxCompressedLength(int)
+	 */
+	public static int maxCompressedLength(int n) {
+		return Huff.maxCompressedLength(n);
+	}
+
+	/**
+	 * Compress <code>len</code> bytes of an array into another array.
+	 * @param src is the array holding the data to be compressed
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param dst is where the compressed data is written, from index 0
+	 * @return the number of bytes written to dst
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int compress(byte[] src, int off, int len, byte[] dst) {
+		if(src == null || dst == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		return compress(ByteBuffer.wrap(src, off, len), ByteBuffer.wrap(dst));
+	}
+
+	/**
+	 * Compress the remaining bytes of <code>src</code> into
+	 * <code>dst</code>, see <code>Huff.compress(ByteBuffer, ByteBuffer)</code>.
+	 * @param src holds the data to be compressed
+	 * @param dst is where the compressed data is written
+	 * @return the number of bytes written to dst
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int compress(ByteBuffer src, ByteBuffer dst) {
+		if(src == null || dst == null) {
+			throw new IllegalArgumentException();
+		}
+		Context ctx = contexts.get();
+		int len = src.remaining();
+		long bits = Huff.storedSize(len);
+		if(len > 0) {
+			bits = Math.min(bits, makeCodes(ctx, src));
+		}
+		boolean stored = bits == Huff.storedSize(len);
+		int size = (int)((bits + BITS_PER_WORD - 1) / BITS_PER_WORD);
+		if(size > dst.remaining()) {
+			throw new IllegalArgumentException("destination too small, " + size + " bytes needed");
+		}
+		if(dst.remaining() - size >= 8 && !dst.isReadOnly()) {
+			writeTo(ctx, src, dst, stored);
+		}
+		else {
+			if(ctx.spill == null || ctx.spill.capacity() < size + 8) {
+				ctx.spill = ByteBuffer.allocate(size + 8);
+			}
+			ByteBuffer tmp = ctx.spill;
+			tmp.clear();
+			writeTo(ctx, src, tmp, stored);
+			tmp.limit(size);
+			dst.duplicate().put(tmp);
+		}
+		src.position(src.limit());
+		dst.position(dst.position() + size);
+		return size;
+	}
+
+	/**
+	 * count the input and make the canonical codes in the context
+	 * @return the size of the compressed data in bits
+	 */
+	private long makeCodes(Context ctx, ByteBuffer src) {
+		CharCounter counter = ctx.counter;
+		counter.clear();
+		counter.count(src);
+		long[] weights = ctx.weights;
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			weights[i] = counter.getLongCount(i);
+		}
+		weights[PSEUDO_EOF] = 1;
+		CanonicalCode.huffmanLengths(weights, ctx.lengths, ctx.sorted, ctx.symbols);
+		if(CanonicalCode.maxLength(ctx.lengths) > maxCodeLength) {
+			int[] limited = CanonicalCode.limitedLengths(weights, maxCodeLength);
+			System.arraycopy(limited, 0, ctx.lengths, 0, limited.length);
+		}
+		CanonicalCode.codes(ctx.lengths, ctx.codes);
+		long bits = BITS_PER_INT + CanonicalCode.lengthsSize(ctx.lengths);
+		for(int i = 0; i <= PSEUDO_EOF; i++) {
+			bits += ctx.lengths[i] * weights[i];
+		}
+		return bits;
+	}
+
+	/**
+	 * write the compressed or stored form of src to dst, which has room for
+	 * it and 8 more bytes, positions are not changed
+	 */
+	private void writeTo(Context ctx, ByteBuffer src, ByteBuffer dst, boolean stored) {
+		BufferedBitOutputStream bits = new BufferedBitOutputStream(dst);
+		int len = src.remaining();
+		if(stored) {
+			Huff.writeStoredHeader(bits, len);
+			bits.flush();
+			ByteBuffer out = dst.duplicate();
+			out.position(dst.position() + Huff.STORED_HEADER_SIZE / BITS_PER_WORD);
+			out.put(src.duplicate());
+			return;
+		}
+		int[] lengths = ctx.lengths;
+		int[] codes = ctx.codes;
+		bits.write(BITS_PER_INT, CANONICAL_MAGIC_NUMBER);
+		CanonicalCode.writeLengths(bits, lengths);
+		if(src.hasArray()) {
+			byte[] b = src.array();
+			int end = src.arrayOffset() + src.limit();
+			for(int i = src.arrayOffset() + src.position(); i < end; i++) {
+				int c = b[i] & 0xff;
+				bits.writeBits(lengths[c], codes[c]);
+			}
+		}
+		else {
+			for(int i = src.position(); i < src.limit(); i++) {
+				int c = src.get(i) & 0xff;
+				bits.writeBits(lengths[c], codes[c]);
+			}
+		}
+		bits.writeBits(lengths[PSEUDO_EOF], codes[PSEUDO_EOF]);
+		bits.flush();
+	}
+
+	/**
+	 * Uncompress data written by <code>compress</code> into an array.
+	 * @param src is the array holding the compressed data
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param dst is where the uncompressed data is written, from index 0
+	 * @return the number of bytes written to dst
+	 * @throws IOException if the data is not valid
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int decompress(byte[] src, int off, int len, byte[] dst) throws IOException {
+		if(src == null || dst == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		return decompress(ByteBuffer.wrap(src, off, len), ByteBuffer.wrap(dst));
+	}
+
+	/**
+	 * Uncompress data from <code>src</code> into <code>dst</code>, see
+	 * <code>Huff.decompress(ByteBuffer, ByteBuffer)</code>.
+	 * @param src holds the compressed data
+	 * @param dst is where the uncompressed data is written
+	 * @return the number of bytes written to dst
+	 * @throws IOException if the data is not valid or is in a format that
+	 * is only written to files
+	 * @throws IllegalArgumentException if dst is too small
+	 */
+	public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+		if(src == null || dst == null) {
+			throw new IllegalArgumentException();
+		}
+		BufferedBitInputStream input = new BufferedBitInputStream(src);
+		int magic = input.read(BITS_PER_INT);
+		int start = dst.position();
+		int end = dst.limit();
+		int pos = start;
+		if(magic == STORED_MAGIC_NUMBER) {
+			long len = Huff.readStoredLength(input);
+			int header = Huff.STORED_HEADER_SIZE / BITS_PER_WORD;
+			if(len > src.remaining() - header) {
+				throw new IOException("unexpected end of input");
+			}
+			if(len > end - start) {
+				throw new IllegalArgumentException("destination too small, " + len + " bytes needed");
+			}
+			ByteBuffer data = src.duplicate();
+			data.position(src.position() + header);
+			data.limit(data.position() + (int)len);
+			dst.duplicate().put(data);
+			dst.position(start + (int)len);
+			src.position(data.limit());
+			return (int)len;
+		}
+		HuffDecoder decoder = decoder(contexts.get(), magic, input);
+		int element;
+		while((element = decoder.decode(input)) != PSEUDO_EOF) {
+			if(pos == end) {
+				throw new IllegalArgumentException("destination too small");
+			}
+			dst.put(pos++, (byte)element);
+		}
+		if(input.overrun()) {
+			throw new IOException("unexpected end of input");
+		}
+		src.position(src.position() + (int)input.bytesConsumed());
+		dst.position(pos);
+		return pos - start;
+	}
+
+	/**
+	 * read the header and return a decoder for it, the decoder of the last
+	 * canonical header is reused when the code lengths are the same
+	 */
+	private static HuffDecoder decoder(Context ctx, int magic, BufferedBitInputStream input) throws IOException {
+		if(magic != CANONICAL_MAGIC_NUMBER) {
+			if(magic == ADAPTIVE_MAGIC_NUMBER || magic == WIDE_MAGIC_NUMBER) {
+				throw new IOException("format not supported in memory, use uncompress");
+			}
+			return Huff.readDecoder(magic, input);
+		}
+		CanonicalCode.readLengths(input, ctx.headerLengths);
+		if(ctx.decoder == null || !Arrays.equals(ctx.headerLengths, ctx.decoderLengths)) {
+			CanonicalCode.codes(ctx.headerLengths, ctx.codes);
+			ctx.decoder = new HuffDecoder(ctx.codes, ctx.headerLengths);
+			System.arraycopy(ctx.headerLengths, 0, ctx.decoderLengths, 0, ctx.headerLengths.length);
+		}
+		return ctx.decoder;
+	}
+}
@@ -0,0 +1,129 @@
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests for HuffCodec.
+ */
+public class HuffCodecTest {
+
+	/**
+	 * make a message of text-like bytes, different for every seed
+	 */
+	private static byte[] message(int seed, int len) {
+		Random random = new Random(seed);
+		byte[] msg = new byte[len];
+		for(int i = 0; i < len; i++) {
+			msg[i] = (byte)('a' + Math.min(25, (int)Math.abs(random.nextGaussian() * 6)));
+		}
+		return msg;
+	}
+
+	/**
+	 * compress and uncompress with one codec and test that the data is the
+	 * same and that Huff reads what the codec writes
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		HuffCodec codec = new HuffCodec();
+		byte[] msg = message(1, 10000);
+		byte[] packed = new byte[HuffCodec.maxCompressedLength(msg.length)];
+		int size = codec.compress(msg, 0, msg.length, packed);
+		assertTrue(size < msg.length);
+		byte[] back = new byte[msg.length];
+		assertEquals(msg.length, codec.decompress(packed, 0, size, back));
+		assertArrayEquals(msg, back);
+
+		back = new byte[msg.length];
+		assertEquals(msg.length, new Huff().decompress(packed, 0, size, back));
+		assertArrayEquals(msg, back);
+
+		//random bytes are stored
+		byte[] noise = new byte[1000];
+		new Random(2).nextBytes(noise);
+		packed = new byte[HuffCodec.maxCompressedLength(noise.length)];
+		size = codec.compress(noise, 0, noise.length, packed);
+		assertEquals(noise.length + 12, size);
+		back = new byte[noise.length];
+		assertEquals(noise.length, codec.decompress(packed, 0, size, back));
+		assertArrayEquals(noise, back);
+	}
+
+	/**
+	 * test that the codec decodes what Huff writes and that buffer
+	 * positions move past the data
+	 */
+	@Test
+	public final void testBuffers() throws IOException {
+		byte[] msg = message(3, 5000);
+		Huff huff = new Huff();
+		huff.setCanonical(true);
+		ByteBuffer packed = ByteBuffer.allocate(Huff.maxCompressedLength(msg.length) + 4);
+		packed.position(4);
+		huff.compress(ByteBuffer.wrap(msg), packed);
+		packed.flip();
+		packed.position(4);
+		ByteBuffer back = ByteBuffer.allocateDirect(msg.length);
+		HuffCodec codec = new HuffCodec();
+		assertEquals(msg.length, codec.decompress(packed, back));
+		assertFalse(packed.hasRemaining());
+		assertFalse(back.hasRemaining());
+		back.flip();
+		byte[] out = new byte[msg.length];
+		back.get(out);
+		assertArrayEquals(msg, out);
+	}
+
+	/**
+	 * share one codec between threads, each compressing and uncompressing
+	 * messages of its own
+	 */
+	@Test
+	public final void testConcurrent() throws Exception {
+		final HuffCodec codec = new HuffCodec();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for(int t = 0; t < 16; t++) {
+				final int seed = t;
+				results.add(pool.submit(() -> {
+					for(int i = 0; i < 50; i++) {
+						byte[] msg = message(seed * 100 + i, 500 + i * 37);
+						byte[] packed = new byte[HuffCodec.maxCompressedLength(msg.length)];
+						int size = codec.compress(msg, 0, msg.length, packed);
+						byte[] back = new byte[msg.length];
+						if(codec.decompress(packed, 0, size, back) != msg.length
+								|| !Arrays.equals(msg, back)) {
+							return false;
+						}
+					}
+					return true;
+				}));
+			}
+			for(Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * test that a destination that is too small is rejected
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testTooSmall() {
+		byte[] msg = message(4, 1000);
+		new HuffCodec().compress(msg, 0, msg.length, new byte[10]);
+	}
+}
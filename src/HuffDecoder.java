@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table-driven Huffman decoder. Instead of walking the tree one bit at a
+ * time, the decoder peeks PRIMARY_BITS bits and resolves the symbol and its
+ * code length with a single array lookup. Codes longer than PRIMARY_BITS
+ * go through a second-level table (and further levels if needed) that is
+ * linked from the primary entry sharing the same prefix.
+ * <P>
+ * All tables live in one int array. A leaf entry stores
+ * <code>symbol << 8 | bits</code>, where bits is the number of bits the code
+ * uses inside that table. A link entry has the sign bit set and stores
+ * <code>offset << 8 | width</code> of the sub-table.
+ */
+public class HuffDecoder implements IHuffConstants {
+
+	/**
+	 * Number of bits resolved by the first lookup.
+	 */
+	public static final int PRIMARY_BITS = 10;
+
+	/**
+	 * Maximum number of bits resolved by any sub-table lookup.
+	 */
+	public static final int SECONDARY_BITS = 8;
+
+	private static final int LINK = 0x80000000;
+
+	private int[] table;
+	private int tableSize;
+	private int rootBits;
+
+	//bit window filled from the input stream, zero padded at end of input
+	private long window;
+	private int windowBits;
+	private int padBits;
+
+	/**
+	 * Build the decode tables from a Huffman tree, e.g. the one returned by
+	 * <code>readHeader</code>.
+	 * @param tree is the Huffman tree to decode with
+	 */
+	public HuffDecoder(HuffTree tree) {
+		if(tree == null || tree.root() == null) {
+			throw new IllegalArgumentException();
+		}
+		int[] codes = new int[ALPH_SIZE + 1];
+		int[] lengths = new int[ALPH_SIZE + 1];
+		collectCodes(tree.root(), 0, 0, codes, lengths);
+		build(codes, lengths);
+	}
+
+	/**
+	 * Build the decode tables from per-symbol codes and code lengths, a
+	 * length of 0 means the symbol does not occur.
+	 * @param codes is the code of every symbol, right aligned
+	 * @param lengths is the code length of every symbol
+	 */
+	public HuffDecoder(int[] codes, int[] lengths) {
+		if(codes == null || lengths == null || codes.length != lengths.length) {
+			throw new IllegalArgumentException();
+		}
+		build(codes, lengths);
+	}
+
+	/**
+	 * Make a decoder that shares the tables of another one, which is much
+	 * cheaper than building them again. Only the tables are shared, so the
+	 * two decoders can be used on different threads.
+	 * @param other is the decoder whose tables are used
+	 */
+	public HuffDecoder(HuffDecoder other) {
+		if(other == null) {
+			throw new IllegalArgumentException();
+		}
+		table = other.table;
+		tableSize = other.tableSize;
+		rootBits = other.rootBits;
+	}
+
+	/**
+	 * preorder traverse the tree and record the code and length of every leaf
+	 */
+	private void collectCodes(IHuffBaseNode node, int code, int len, int[] codes, int[] lengths) {
+		if(node == null) {
+			throw new IllegalArgumentException();
+		}
+		if(node.isLeaf()) {
+			int el = ((HuffLeafNode)node).element();
+			codes[el] = code;
+			lengths[el] = len;
+			return;
+		}
+		collectCodes(((HuffInternalNode)node).left(), code << 1, len + 1, codes, lengths);
+		collectCodes(((HuffInternalNode)node).right(), (code << 1) | 1, len + 1, codes, lengths);
+	}
+
+	private void build(int[] codes, int[] lengths) {
+		List<Integer> symbols = new ArrayList<Integer>();
+		int maxLen = 0;
+		for(int i = 0; i < lengths.length; i++) {
+			if(lengths[i] > 0) {
+				symbols.add(i);
+				maxLen = Math.max(maxLen, lengths[i]);
+			}
+		}
+		if(symbols.isEmpty() || maxLen > BITS_PER_INT - 1) {
+			throw new IllegalArgumentException();
+		}
+		table = new int[1 << PRIMARY_BITS];
+		tableSize = 0;
+		rootBits = Math.min(PRIMARY_BITS, maxLen);
+		buildTable(symbols, codes, lengths, 0, rootBits);
+	}
+
+	/**
+	 * Fill a table of 2^width entries for the given symbols, all of which
+	 * share the same first <code>consumed</code> bits.
+	 * @return the offset of the table
+	 */
+	private int buildTable(List<Integer> symbols, int[] codes, int[] lengths, int consumed, int width) {
+		int offset = allocate(1 << width);
+		//symbols whose code does not fit, grouped by their next width bits
+		List<List<Integer>> longer = new ArrayList<List<Integer>>();
+		for(int i = 0; i < (1 << width); i++) {
+			longer.add(null);
+		}
+		for(int sym : symbols) {
+			int rem = lengths[sym] - consumed;
+			int bits = codes[sym] & ((1 << rem) - 1);
+			if(rem <= width) {
+				int first = bits << (width - rem);
+				int entry = (sym << 8) | rem;
+				for(int j = 0; j < (1 << (width - rem)); j++) {
+					table[offset + first + j] = entry;
+				}
+			}
+			else {
+				int prefix = bits >>> (rem - width);
+				if(longer.get(prefix) == null) {
+					longer.set(prefix, new ArrayList<Integer>());
+				}
+				longer.get(prefix).add(sym);
+			}
+		}
+		for(int prefix = 0; prefix < longer.size(); prefix++) {
+			List<Integer> group = longer.get(prefix);
+			if(group == null) {
+				continue;
+			}
+			int maxRem = 0;
+			for(int sym : group) {
+				maxRem = Math.max(maxRem, lengths[sym] - consumed - width);
+			}
+			int subWidth = Math.min(SECONDARY_BITS, maxRem);
+			int sub = buildTable(group, codes, lengths, consumed + width, subWidth);
+			table[offset + prefix] = LINK | (sub << 8) | subWidth;
+		}
+		return offset;
+	}
+
+	private int allocate(int n) {
+		while(tableSize + n > table.length) {
+			int[] tmp = new int[table.length * 2];
+			System.arraycopy(table, 0, tmp, 0, tableSize);
+			table = tmp;
+		}
+		int offset = tableSize;
+		tableSize += n;
+		return offset;
+	}
+
+	/**
+	 * Decode the next symbol from the stream. For a plain BitInputStream the
+	 * decoder keeps up to a few bytes of look-ahead, so the stream should not
+	 * be read by anybody else once decoding started.
+	 * @param in is the source of the encoded bits
+	 * @return the decoded symbol, PSEUDO_EOF included
+	 * @throws IOException if the input ends in the middle of a code
+	 */
+	public int decode(BitInputStream in) throws IOException {
+		if(in instanceof BufferedBitInputStream) {
+			return decode((BufferedBitInputStream)in);
+		}
+		int offset = 0;
+		int width = rootBits;
+		int entry;
+		while((entry = table[offset + peek(in, width)]) < 0) {
+			consume(width);
+			offset = (entry >>> 8) & 0x7FFFFF;
+			width = entry & 0xFF;
+		}
+		if((entry & 0xFF) == 0) {
+			//hole in the table, the code lengths were not a complete code
+			throw new IOException("invalid code in input file");
+		}
+		consume(entry & 0xFF);
+		return entry >>> 8;
+	}
+
+	/**
+	 * Decode the next symbol using the stream's own bit register, which needs
+	 * no look-ahead in the decoder. Past the end of input the stream returns
+	 * zero bits, clients should check <code>overrun</code> when done.
+	 * @param in is the source of the encoded bits
+	 * @return the decoded symbol, PSEUDO_EOF included
+	 * @throws IOException if reading fails or the code is invalid
+	 */
+	public int decode(BufferedBitInputStream in) throws IOException {
+		int offset = 0;
+		int width = rootBits;
+		int entry;
+		while((entry = table[offset + (int)in.peekBits(width)]) < 0) {
+			in.skipBits(width);
+			offset = (entry >>> 8) & 0x7FFFFF;
+			width = entry & 0xFF;
+		}
+		if((entry & 0xFF) == 0) {
+			throw new IOException("invalid code in input file");
+		}
+		in.skipBits(entry & 0xFF);
+		return entry >>> 8;
+	}
+
+	/**
+	 * @return the next n bits without consuming them
+	 */
+	private int peek(BitInputStream in, int n) throws IOException {
+		if(windowBits < n) {
+			fill(in);
+		}
+		return (int)(window >>> (windowBits - n)) & ((1 << n) - 1);
+	}
+
+	private void consume(int n) throws IOException {
+		windowBits -= n;
+		if(windowBits < padBits) {
+			throw new IOException("unexpected end of input file");
+		}
+		window &= (1L << windowBits) - 1;
+	}
+
+	/**
+	 * top up the window, the bits left over in the stream from reading the
+	 * header are taken first so that the rest can be read a byte at a time
+	 */
+	private void fill(BitInputStream in) throws IOException {
+		int leftover = in.bufferedBits();
+		if(leftover > 0) {
+			window = (window << leftover) | in.read(leftover);
+			windowBits += leftover;
+		}
+		while(windowBits <= 48) {
+			int b = in.read(BITS_PER_WORD);
+			if(b == -1) {
+				b = 0;
+				padBits += BITS_PER_WORD;
+			}
+			window = (window << BITS_PER_WORD) | b;
+			windowBits += BITS_PER_WORD;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A canonical code trained once from a sample corpus, for compressing many
+ * small messages. A message compressed against a dictionary carries only
+ * the dictionary ID instead of a code table, and no counting or tree
+ * building is done per message.
+ * <P>
+ * Every chunk gets a code even if the sample never had it, so any message
+ * can be compressed. Dictionaries are kept in a cache by ID once loaded or
+ * registered, which is where <code>Huff.uncompress</code> looks them up.
+ * <P>
+ * Saved layout: SAVED_DICTIONARY_MAGIC_NUMBER, the ID (32 bits each), then the
+ * code lengths in the format of <code>CanonicalCode.writeLengths</code>.
+ */
+public class HuffDictionary implements IHuffConstants {
+
+	private static final Map<Integer, HuffDictionary> cache = new ConcurrentHashMap<Integer, HuffDictionary>();
+	private static final Map<Path, HuffDictionary> loaded = new ConcurrentHashMap<Path, HuffDictionary>();
+
+	private int id;
+	private int[] lengths;
+	private int[] codes;
+	private HuffDecoder decoder;
+
+	/**
+	 * class Constructor
+	 * @param id identifies the dictionary in compressed messages
+	 * @param lengths is the code length of every chunk and PSEUDO_EOF
+	 * @throws IllegalArgumentException if the lengths are not a complete code
+	 * for all chunks
+	 */
+	public HuffDictionary(int id, int[] lengths) {
+		if(lengths == null || lengths.length != ALPH_SIZE + 1 || !CanonicalCode.isComplete(lengths)) {
+			throw new IllegalArgumentException();
+		}
+		for(int len : lengths) {
+			if(len == 0) {
+				throw new IllegalArgumentException("every chunk needs a code");
+			}
+		}
+		this.id = id;
+		this.lengths = lengths.clone();
+		codes = CanonicalCode.codes(this.lengths);
+		decoder = new HuffDecoder(codes, this.lengths);
+	}
+
+	/**
+	 * Train a dictionary from the chunk counts of a sample.
+	 * @param id identifies the dictionary in compressed messages
+	 * @param sample is read to the end and closed
+	 * @return the dictionary, it is not registered
+	 * @throws IOException if reading the sample fails
+	 */
+	public static HuffDictionary train(int id, InputStream sample) throws IOException {
+		CharCounter counter = new CharCounter();
+		counter.countAll(sample);
+		return train(id, counter);
+	}
+
+	/**
+	 * Train a dictionary from chunk counts, chunks with a count of zero
+	 * are given a count of one.
+	 * @param id identifies the dictionary in compressed messages
+	 * @param counts holds the count of every chunk
+	 * @return the dictionary, it is not registered
+	 */
+	public static HuffDictionary train(int id, ICharCounter counts) {
+		long[] weights = new long[ALPH_SIZE + 1];
+		for(int i = 0; i < ALPH_SIZE; i++) {
+			weights[i] = Math.max(1, CharCounter.getLongCount(counts, i));
+		}
+		weights[PSEUDO_EOF] = 1;
+		int[] lengths = CanonicalCode.huffmanLengths(weights);
+		if(CanonicalCode.maxLength(lengths) > Huff.DEFAULT_MAX_CODE_LENGTH) {
+			lengths = CanonicalCode.limitedLengths(weights, Huff.DEFAULT_MAX_CODE_LENGTH);
+		}
+		return new HuffDictionary(id, lengths);
+	}
+
+	/**
+	 * Make the dictionary available to <code>Huff.uncompress</code>,
+	 * replacing any dictionary with the same ID.
+	 * @param dict is the dictionary
+	 */
+	public static void register(HuffDictionary dict) {
+		cache.put(dict.id(), dict);
+	}
+
+	/**
+	 * @param id is the ID of a dictionary
+	 * @return the dictionary registered or loaded with this ID, null if none
+	 */
+	public static HuffDictionary get(int id) {
+		return cache.get(id);
+	}
+
+	/**
+	 * Load a saved dictionary and register it. Every file is read only once,
+	 * later calls return the cached dictionary.
+	 * @param file is the saved dictionary
+	 * @return the dictionary
+	 * @throws IOException if reading fails or the file is not a dictionary
+	 */
+	public static HuffDictionary load(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		HuffDictionary dict = loaded.get(key);
+		if(dict == null) {
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(key))) {
+				dict = read(in);
+			}
+			register(dict);
+			loaded.put(key, dict);
+		}
+		return dict;
+	}
+
+	/**
+	 * Read a dictionary written by <code>save</code>, it is not registered.
+	 * @param in is the source of the dictionary, it is not closed
+	 * @return the dictionary
+	 * @throws IOException if reading fails or the data is not a dictionary
+	 */
+	public static HuffDictionary read(InputStream in) throws IOException {
+		BitInputStream bits = new BitInputStream(in);
+		if(bits.read(BITS_PER_INT) != SAVED_DICTIONARY_MAGIC_NUMBER) {
+			throw new IOException("magic number not right");
+		}
+		int id = bits.read(BITS_PER_INT);
+		try {
+			return new HuffDictionary(id, CanonicalCode.readLengths(bits));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("not a valid dictionary");
+		}
+	}
+
+	/**
+	 * Save the dictionary.
+	 * @param out is where the dictionary is written, it is flushed but not closed
+	 */
+	public void save(OutputStream out) {
+		BitOutputStream bits = new BitOutputStream(new BufferedOutputStream(out));
+		bits.write(BITS_PER_INT, SAVED_DICTIONARY_MAGIC_NUMBER);
+		bits.write(BITS_PER_INT, id);
+		CanonicalCode.writeLengths(bits, lengths);
+		bits.flush();
+	}
+
+	/**
+	 * Save the dictionary to a file.
+	 * @param file is where the dictionary is written
+	 * @throws IOException if writing fails
+	 */
+	public void save(Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			save(out);
+		}
+	}
+
+	/**
+	 * @return the ID of the dictionary
+	 */
+	public int id() {
+		return id;
+	}
+
+	/**
+	 * @param ch is a chunk or PSEUDO_EOF
+	 * @return the code length of ch
+	 */
+	public int length(int ch) {
+		return lengths[ch];
+	}
+
+	/**
+	 * @param ch is a chunk or PSEUDO_EOF
+	 * @return the code of ch, right aligned
+	 */
+	public int code(int ch) {
+		return codes[ch];
+	}
+
+	/**
+	 * @return a decoder for this dictionary, it shares the decode tables
+	 */
+	public HuffDecoder decoder() {
+		return new HuffDecoder(decoder);
+	}
+}
@@ -0,0 +1,107 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Tests for HuffDictionary and compressing against it.
+ */
+public class HuffDictionaryTest {
+
+	private static final String SAMPLE = "the quick brown fox jumps over the lazy dog, "
+			+ "then the dog sleeps and the fox runs into the forest. ";
+
+	/**
+	 * compress a short message against a dictionary and test that it is
+	 * smaller than with its own code table and that it uncompresses
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		HuffDictionary dict = HuffDictionary.train(7, new ByteArrayInputStream(SAMPLE.getBytes("UTF-8")));
+		HuffDictionary.register(dict);
+		//includes a chunk the sample never had
+		byte[] msg = "the fox and the dog!\u0001".getBytes("UTF-8");
+		ByteArrayOutputStream withDict = new ByteArrayOutputStream();
+		int size = new Huff().write(msg, 0, msg.length, withDict, dict);
+		assertEquals((size + 7) / 8, withDict.size());
+		ByteArrayOutputStream withTable = new ByteArrayOutputStream();
+		Huff huff = new Huff();
+		huff.setCanonical(true);
+		huff.write(msg, 0, msg.length, withTable, true);
+		assertTrue(withDict.size() < withTable.size());
+
+		ByteArrayOutputStream back = new ByteArrayOutputStream();
+		assertEquals(msg.length * 8, new Huff().uncompress(new ByteArrayInputStream(withDict.toByteArray()), back));
+		assertArrayEquals(msg, back.toByteArray());
+	}
+
+	/**
+	 * save a dictionary and test that loading it gives the same codes and
+	 * that a second load returns the cached dictionary
+	 */
+	@Test
+	public final void testSaveLoad() throws IOException {
+		HuffDictionary dict = HuffDictionary.train(8, new ByteArrayInputStream(SAMPLE.getBytes("UTF-8")));
+		File file = File.createTempFile("dict", ".hd");
+		try {
+			dict.save(file.toPath());
+			HuffDictionary loaded = HuffDictionary.load(file.toPath());
+			assertEquals(8, loaded.id());
+			for(int i = 0; i <= IHuffConstants.PSEUDO_EOF; i++) {
+				assertEquals(dict.length(i), loaded.length(i));
+				assertEquals(dict.code(i), loaded.code(i));
+			}
+			assertSame(loaded, HuffDictionary.load(file.toPath()));
+			assertSame(loaded, HuffDictionary.get(8));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * test that data compressed against a dictionary that is not registered
+	 * cannot be uncompressed
+	 */
+	@Test(expected = IOException.class)
+	public final void testUnknownDictionary() throws IOException {
+		HuffDictionary dict = HuffDictionary.train(-99, new ByteArrayInputStream(SAMPLE.getBytes("UTF-8")));
+		byte[] msg = "fox".getBytes("UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Huff().write(msg, 0, msg.length, out, dict);
+		new Huff().uncompress(new ByteArrayInputStream(out.toByteArray()), new ByteArrayOutputStream());
+	}
+
+	/**
+	 * test that a saved dictionary is not taken for data compressed against
+	 * it, nor the other way round
+	 */
+	@Test
+	public final void testSavedIsNotData() throws IOException {
+		HuffDictionary dict = HuffDictionary.train(9, new ByteArrayInputStream(SAMPLE.getBytes("UTF-8")));
+		HuffDictionary.register(dict);
+		ByteArrayOutputStream saved = new ByteArrayOutputStream();
+		dict.save(saved);
+		ByteArrayOutputStream back = new ByteArrayOutputStream();
+		try {
+			new Huff().uncompress(new ByteArrayInputStream(saved.toByteArray()), back);
+			fail("a saved dictionary was uncompressed");
+		} catch (IOException e) {
+			//refused by its magic number, before anything is decoded
+			assertEquals("magic number not right", e.getMessage());
+			assertEquals(0, back.size());
+		}
+		byte[] msg = "fox".getBytes("UTF-8");
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		new Huff().write(msg, 0, msg.length, data, dict);
+		try {
+			HuffDictionary.read(new ByteArrayInputStream(data.toByteArray()));
+			fail("compressed data was read as a dictionary");
+		} catch (IOException e) {
+			assertEquals("magic number not right", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,149 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Input stream that uncompresses data written by <code>HuffOutputStream</code>
+ * or <code>BlockHuff.write</code>. Blocks are decoded one at a time as the
+ * bytes are read, so only one block is held in memory. The block index at
+ * the end of the data is not needed and is not read.
+ */
+public class HuffInputStream extends InputStream implements IHuffConstants {
+
+	private DataInputStream in;
+	private byte[] block;
+	private int pos;
+	private int limit;
+	private boolean eof;
+	private boolean closed;
+
+	/**
+	 * class Constructor, reads the header of the compressed data
+	 * @param in is the stream the compressed data is read from
+	 * @throws IOException if the header is not valid or reading fails
+	 */
+	public HuffInputStream(InputStream in) throws IOException {
+		if(in == null) {
+			throw new IllegalArgumentException();
+		}
+		this.in = new DataInputStream(new BufferedInputStream(in, BufferedBitInputStream.DEFAULT_BUFFER_SIZE));
+		if(this.in.readInt() != FRAMED_MAGIC_NUMBER) {
+			throw new IOException("magic number not right");
+		}
+		int blockSize = this.in.readInt();
+		if(blockSize <= 0) {
+			throw new IOException("bad block size");
+		}
+		block = new byte[blockSize];
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(pos == limit && !nextBlock()) {
+			return -1;
+		}
+		return block[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if(len == 0) {
+			return 0;
+		}
+		if(pos == limit && !nextBlock()) {
+			return -1;
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(block, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return limit - pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(!closed) {
+			closed = true;
+			in.close();
+		}
+	}
+
+	/**
+	 * decode the next block
+	 * @return false at the end of the data
+	 */
+	private boolean nextBlock() throws IOException {
+		if(closed) {
+			throw new IOException("stream closed");
+		}
+		if(eof) {
+			return false;
+		}
+		int payload;
+		int rawLength;
+		byte[] compressed;
+		try {
+			payload = in.readInt();
+			if(payload == 0) {
+				eof = true;
+				return false;
+			}
+			rawLength = in.readInt();
+			if(payload < 0 || rawLength < 0 || rawLength > block.length) {
+				throw new IOException("bad block header");
+			}
+			compressed = new byte[payload];
+			in.readFully(compressed);
+		} catch (EOFException e) {
+			throw new IOException("unexpected end of input", e);
+		}
+		BlockSink sink = new BlockSink(block);
+		//compared in bytes, the int bit count overflows for blocks of 256 MB
+		Huff huff = new Huff();
+		huff.uncompress(new ByteArrayInputStream(compressed), sink);
+		if(huff.uncompressedBytes() != rawLength) {
+			throw new IOException("block length does not match");
+		}
+		pos = 0;
+		limit = rawLength;
+		//an empty block is legal, move on to the next one
+		return limit > 0 || nextBlock();
+	}
+
+	/**
+	 * writes decoded bytes straight into the block array
+	 */
+	private static class BlockSink extends OutputStream {
+		private byte[] block;
+		private int size;
+
+		BlockSink(byte[] block) {
+			this.block = block;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte)b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(len > block.length - size) {
+				throw new IOException("block length does not match");
+			}
+			System.arraycopy(b, off, block, size, len);
+			size += len;
+		}
+	}
+}
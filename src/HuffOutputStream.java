@@ -0,0 +1,145 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output stream that compresses the bytes written to it, so data can be
+ * compressed in memory without staging it in a file. Bytes are collected
+ * into blocks and every full block is encoded with its own canonical code,
+ * in the block container format of <code>BlockHuff</code>. The result can
+ * be read back with <code>HuffInputStream</code>, and if written to a file,
+ * with <code>Huff.uncompress</code> or <code>BlockHuff.uncompress</code>.
+ * <P>
+ * <code>flush</code> ends the current block early so that everything
+ * written so far can be decoded by the reader, <code>close</code> writes
+ * the last block and the block index and closes the underlying stream.
+ */
+public class HuffOutputStream extends OutputStream implements IHuffConstants {
+
+	private DataOutputStream out;
+	private byte[] block;
+	private int used;
+	private long offset;
+	private long inputSize;
+	//file offset and uncompressed offset of every block
+	private List<long[]> index;
+	private boolean closed;
+
+	/**
+	 * class Constructor with the default block size
+	 * @param out is the stream the compressed data is written to
+	 * @throws IOException if writing the header fails
+	 */
+	public HuffOutputStream(OutputStream out) throws IOException {
+		this(out, BlockHuff.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * class Constructor
+	 * @param out is the stream the compressed data is written to
+	 * @param blockSize is the number of input bytes per block
+	 * @throws IOException if writing the header fails
+	 */
+	public HuffOutputStream(OutputStream out, int blockSize) throws IOException {
+		if(out == null || blockSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.out = new DataOutputStream(new BufferedOutputStream(out, BufferedBitOutputStream.DEFAULT_BUFFER_SIZE));
+		block = new byte[blockSize];
+		index = new ArrayList<long[]>();
+		this.out.writeInt(FRAMED_MAGIC_NUMBER);
+		this.out.writeInt(blockSize);
+		offset = 2 * BITS_PER_INT / BITS_PER_WORD;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		block[used++] = (byte)b;
+		if(used == block.length) {
+			writeBlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		while(len > 0) {
+			int n = Math.min(len, block.length - used);
+			System.arraycopy(b, off, block, used, n);
+			used += n;
+			off += n;
+			len -= n;
+			if(used == block.length) {
+				writeBlock();
+			}
+		}
+	}
+
+	/**
+	 * Compress the bytes written since the last block as a block of their
+	 * own and flush the underlying stream.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		writeBlock();
+		out.flush();
+	}
+
+	/**
+	 * Compress the last block, write the block index and close the
+	 * underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		writeBlock();
+		BlockHuff.writeTrailer(out, index, offset);
+		closed = true;
+		out.close();
+	}
+
+	/**
+	 * @return the number of bytes written to this stream so far
+	 */
+	public long inputSize() {
+		return inputSize + used;
+	}
+
+	/**
+	 * @return the number of compressed bytes produced so far
+	 */
+	public long outputSize() {
+		return offset;
+	}
+
+	/**
+	 * compress the collected bytes, if any
+	 */
+	private void writeBlock() throws IOException {
+		if(used == 0) {
+			return;
+		}
+		index.add(new long[] {offset, inputSize});
+		byte[] res = BlockHuff.compressBlock(block, 0, used);
+		out.write(res);
+		offset += res.length;
+		inputSize += used;
+		used = 0;
+	}
+
+	private void ensureOpen() throws IOException {
+		if(closed) {
+			throw new IOException("stream closed");
+		}
+	}
+}
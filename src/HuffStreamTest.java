@@ -0,0 +1,100 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for HuffOutputStream and HuffInputStream.
+ */
+public class HuffStreamTest {
+
+	/**
+	 * write random pieces of data, with a flush in the middle, and test that
+	 * reading them back gives the same bytes
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		byte[] data = new byte[50000];
+		Random rnd = new Random(5);
+		for(int i = 0; i < data.length; i++) {
+			data[i] = (byte)('a' + rnd.nextInt(10));
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		HuffOutputStream out = new HuffOutputStream(bytes, 4096);
+		int pos = 0;
+		while(pos < data.length) {
+			int len = Math.min(data.length - pos, rnd.nextInt(3000));
+			out.write(data, pos, len);
+			pos += len;
+			if(pos > data.length / 2 && pos - len <= data.length / 2) {
+				out.flush();
+			}
+			if(pos < data.length) {
+				out.write(data[pos++]);
+			}
+		}
+		out.close();
+		assertEquals(data.length, out.inputSize());
+		assertTrue(out.outputSize() < bytes.size());
+		assertTrue(bytes.size() < data.length);
+
+		InputStream in = new HuffInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		byte[] back = new byte[data.length];
+		int n = 0;
+		int len;
+		while((len = in.read(back, n, Math.min(back.length - n, 1 + rnd.nextInt(5000)))) > 0) {
+			n += len;
+		}
+		assertEquals(data.length, n);
+		assertEquals(-1, in.read());
+		in.close();
+		assertArrayEquals(data, back);
+	}
+
+	/**
+	 * test that a stream written to a file can be uncompressed by Huff
+	 */
+	@Test
+	public final void testUncompressFile() throws IOException {
+		File out = File.createTempFile("streamOut", ".hf");
+		File back = File.createTempFile("streamBack", ".txt");
+		try {
+			byte[] data = "streaming streams of strings".getBytes("UTF-8");
+			HuffOutputStream stream = new HuffOutputStream(Files.newOutputStream(out.toPath()), 8);
+			stream.write(data);
+			stream.close();
+			assertEquals(data.length * 8, new Huff().uncompress(out.getPath(), back.getPath()));
+			assertArrayEquals(data, Files.readAllBytes(back.toPath()));
+		} finally {
+			out.delete();
+			back.delete();
+		}
+	}
+
+	/**
+	 * test that an empty stream reads back as empty
+	 */
+	@Test
+	public final void testEmpty() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new HuffOutputStream(bytes).close();
+		InputStream in = new HuffInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(-1, in.read());
+		in.close();
+	}
+
+	/**
+	 * test that data that is not a compressed stream is rejected
+	 */
+	@Test(expected = IOException.class)
+	public final void testBadMagic() throws IOException {
+		new HuffInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+	}
+}
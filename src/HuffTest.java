@@ -7,6 +7,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -201,6 +202,9 @@ public class HuffTest implements IHuffConstants{
 			//check the size of the header that was written
 			huff.writeHeader(new BitOutputStream(out));
 			assertEquals(huff.headerSize(), 119);
+			//a second header on the same object is counted from zero
+			huff.writeHeader(new BitOutputStream(out));
+			assertEquals(huff.headerSize(), 119);
 			out.close(); //close the stream
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -342,4 +346,355 @@ public class HuffTest implements IHuffConstants{
 		//test the uncompressed size
 		assertEquals(80, size);
 	}
+
+	/**
+	 * create the new huff object, encode a string in memory and test that the
+	 * table-driven decoder built from "readHeader" returns the original characters
+	 */
+	@Test
+	public final void testDecoder() {
+		try {
+			Huff huff = new Huff();
+			assertEquals("teststring", decode(huff, encode(huff, "teststring")));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * create the new huff object in canonical mode and test that the header
+	 * holds the code lengths and the canonical codes decode correctly
+	 */
+	@Test
+	public final void testCanonical() {
+		try {
+			Huff huff = new Huff();
+			huff.setCanonical(true);
+			byte[] encoded = encode(huff, "teststring");
+			//'t' is the only code of length 2, so it gets code 00
+			assertEquals("00", huff.getCode('t'));
+			//check the magic number of the canonical header
+			BitInputStream in = new BitInputStream(new ByteArrayInputStream(encoded));
+			assertEquals(CANONICAL_MAGIC_NUMBER, in.read(BITS_PER_INT));
+			assertEquals("teststring", decode(new Huff(), encoded));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * create the new huff object and test that the single-pass "write"
+	 * compresses a stream that can be decoded again
+	 */
+	@Test
+	public final void testWriteStream() {
+		try {
+			Huff huff = new Huff();
+			InputStream in = new ByteArrayInputStream("teststring".getBytes("UTF-8"));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			//same size as writing the file: 119 bits header, 28 bits code, 4 bits EOF
+			assertEquals(151, huff.write(in, out, true));
+			assertEquals(19, out.size());
+			assertEquals("teststring", decode(new Huff(), out.toByteArray()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * create the new huff object and test that "write" with a pre-supplied
+	 * model encodes characters the model has never seen
+	 */
+	@Test
+	public final void testWriteModel() {
+		try {
+			ICharCounter model = new CharCounter();
+			model.countAll(new ByteArrayInputStream("teststring".getBytes("UTF-8")));
+			Huff huff = new Huff();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			huff.write(new ByteArrayInputStream("a test string!".getBytes("UTF-8")), out, model);
+			assertEquals("a test string!", decode(new Huff(), out.toByteArray()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * test that the code lengths built on arrays cost as many bits as the
+	 * lengths of the tree built with the heap
+	 */
+	@Test
+	public final void testArrayLengths() throws IOException {
+		Huff huff = new Huff();
+		HuffTree tree = huff.makeHuffTree(new ByteArrayInputStream("a test of the array lengths".getBytes("UTF-8")));
+		int[] treeLengths = CanonicalCode.lengths(tree.root());
+		long[] weights = new long[ALPH_SIZE + 1];
+		for(Map.Entry<Integer, Integer> kv : huff.showCounts().entrySet()) {
+			weights[kv.getKey()] = kv.getValue();
+		}
+		weights[PSEUDO_EOF] = 1;
+		int[] arrayLengths = CanonicalCode.huffmanLengths(weights);
+		long treeBits = 0;
+		long arrayBits = 0;
+		for(int i = 0; i <= PSEUDO_EOF; i++) {
+			treeBits += treeLengths[i] * weights[i];
+			arrayBits += arrayLengths[i] * weights[i];
+			assertEquals(weights[i] > 0, arrayLengths[i] > 0);
+		}
+		assertEquals(treeBits, arrayBits);
+		assertTrue(CanonicalCode.isComplete(arrayLengths));
+	}
+
+	/**
+	 * create the new huff object with a limit on the code length and test
+	 * that counts growing like the Fibonacci numbers, which make the tree
+	 * very deep, get codes within the limit that still decode
+	 */
+	@Test
+	public final void testMaxCodeLength() throws IOException {
+		//25 chunks with Fibonacci counts, about 200K bytes in total
+		int[] fib = new int[25];
+		fib[0] = fib[1] = 1;
+		for(int i = 2; i < fib.length; i++) {
+			fib[i] = fib[i - 1] + fib[i - 2];
+		}
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		for(int i = 0; i < fib.length; i++) {
+			for(int j = 0; j < fib[i]; j++) {
+				data.write('A' + i);
+			}
+		}
+		byte[] src = data.toByteArray();
+		for(boolean canonical : new boolean[] {false, true}) {
+			Huff huff = new Huff();
+			huff.setCanonical(canonical);
+			huff.setMaxCodeLength(12);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			huff.write(src, 0, src.length, out, true);
+			for(int i = 0; i < fib.length; i++) {
+				assertTrue(huff.getCode('A' + i).length() <= 12);
+			}
+			assertTrue(huff.getCode(PSEUDO_EOF).length() <= 12);
+			ByteArrayOutputStream back = new ByteArrayOutputStream();
+			new Huff().uncompress(new ByteArrayInputStream(out.toByteArray()), back);
+			assertArrayEquals(src, back.toByteArray());
+		}
+	}
+
+	/**
+	 * create the new huff object, compress and uncompress a file and test
+	 * the sizes in bytes reported for both
+	 */
+	@Test
+	public final void testByteSizes() throws IOException {
+		File in = File.createTempFile("sizes", ".txt");
+		File out = File.createTempFile("sizes", ".hf");
+		File back = File.createTempFile("sizes", ".txt");
+		try {
+			byte[] data = "the sizes of this text in bytes, compressed and not".getBytes("UTF-8");
+			java.nio.file.Files.write(in.toPath(), data);
+			Huff huff = new Huff();
+			long bits = huff.compress(in.getPath(), out.getPath(), true);
+			assertEquals(data.length, huff.uncompressedBytes());
+			assertEquals((bits + 7) / 8, huff.compressedBytes());
+			assertEquals(out.length(), huff.compressedBytes());
+			Huff other = new Huff();
+			assertEquals(data.length * 8L, other.decompress(out.getPath(), back.getPath()));
+			assertEquals(data.length, other.uncompressedBytes());
+			assertEquals(out.length(), other.compressedBytes());
+		} finally {
+			in.delete();
+			out.delete();
+			back.delete();
+		}
+	}
+
+	/**
+	 * create the new huff object and test that the estimated size is the
+	 * size that is written, in both modes, and that a sampled estimate of
+	 * a larger file is close
+	 */
+	@Test
+	public final void testEstimate() throws IOException {
+		byte[] data = new byte[3 << 20];
+		java.util.Random rnd = new java.util.Random(5);
+		for(int i = 0; i < data.length; i++) {
+			data[i] = (byte)(rnd.nextInt(16) * rnd.nextInt(16));
+		}
+		File file = File.createTempFile("estimate", ".bin");
+		try {
+			java.nio.file.Files.write(file.toPath(), data);
+			for(boolean canonical : new boolean[] {false, true}) {
+				Huff huff = new Huff();
+				huff.setCanonical(canonical);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				huff.write(data, 0, data.length, out, true);
+				Huff estimator = new Huff();
+				estimator.setCanonical(canonical);
+				assertEquals(out.size(), estimator.estimate(new ByteArrayInputStream(data)));
+				assertEquals(data.length, estimator.uncompressedBytes());
+				assertEquals(out.size(), estimator.estimate(file.toPath()));
+				long sampled = estimator.estimate(file.toPath(), 256 << 10);
+				assertTrue(Math.abs(sampled - out.size()) < out.size() / 100);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * create the new huff object and test that random data, which does not
+	 * compress, is stored as it is, from a file after sampling it and from
+	 * an array after counting it, and that it uncompresses
+	 */
+	@Test
+	public final void testStored() throws IOException {
+		byte[] data = new byte[(2 << 20) + 3];
+		new java.util.Random(9).nextBytes(data);
+		File in = File.createTempFile("stored", ".bin");
+		File out = File.createTempFile("stored", ".hf");
+		File back = File.createTempFile("stored", ".bin");
+		try {
+			java.nio.file.Files.write(in.toPath(), data);
+			Huff huff = new Huff();
+			long bits = huff.compress(in.getPath(), out.getPath(), false);
+			assertEquals(0, out.length());
+			assertEquals(96 + data.length * 8L, bits);
+			assertEquals(bits, huff.compress(in.getPath(), out.getPath(), true));
+			assertEquals(data.length + 12, out.length());
+			assertEquals(data.length * 8L, new Huff().decompress(out.getPath(), back.getPath()));
+			assertArrayEquals(data, java.nio.file.Files.readAllBytes(back.toPath()));
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			assertEquals(96 + 1000 * 8, new Huff().write(data, 5, 1000, bytes, true));
+			assertEquals(1012, bytes.size());
+			ByteArrayOutputStream restored = new ByteArrayOutputStream();
+			new Huff().uncompress(new ByteArrayInputStream(bytes.toByteArray()), restored);
+			assertArrayEquals(java.util.Arrays.copyOfRange(data, 5, 1005), restored.toByteArray());
+		} finally {
+			in.delete();
+			out.delete();
+			back.delete();
+		}
+	}
+
+	/**
+	 * create the new huff object and test that a decode listener is called
+	 * once per batch, not per chunk, and that a trace prints only samples
+	 */
+	@Test
+	public final void testDecodeListener() throws IOException {
+		StringBuilder text = new StringBuilder();
+		while(text.length() < 200000) {
+			text.append("listen to the decoder, ");
+		}
+		byte[] data = text.toString().getBytes("UTF-8");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new Huff().write(data, 0, data.length, out, true);
+		final long[] seen = new long[2];
+		Huff huff = new Huff();
+		huff.setDecodeListener(new IDecodeListener() {
+			@Override
+			public void decoded(byte[] batch, int len, long total) {
+				seen[0]++;
+				seen[1] += len;
+				assertEquals(seen[1], total);
+			}
+		});
+		ByteArrayOutputStream back = new ByteArrayOutputStream();
+		huff.uncompress(new ByteArrayInputStream(out.toByteArray()), back);
+		assertArrayEquals(data, back.toByteArray());
+		assertEquals((data.length + 65535) / 65536, seen[0]);
+		assertEquals(data.length, seen[1]);
+
+		ByteArrayOutputStream trace = new ByteArrayOutputStream();
+		huff.setDecodeListener(new DecodeTrace(new java.io.PrintStream(trace, true, "UTF-8"), 100000, 10));
+		huff.uncompress(new ByteArrayInputStream(out.toByteArray()), new ByteArrayOutputStream());
+		String[] lines = trace.toString("UTF-8").split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("decoded 65536 bytes: listen to ", lines[0]);
+	}
+
+	/**
+	 * create the new huff object and compress arrays and buffers in memory,
+	 * heap and direct, compressible or not, into destinations with and
+	 * without room to spare, and test that they uncompress
+	 */
+	@Test
+	public final void testInMemory() throws IOException {
+		byte[] text = "in memory, without streams, in memory, without copies".getBytes("UTF-8");
+		byte[] random = new byte[5000];
+		new java.util.Random(3).nextBytes(random);
+		for(byte[] data : new byte[][] {text, random, new byte[0]}) {
+			for(boolean canonical : new boolean[] {false, true}) {
+				Huff huff = new Huff();
+				huff.setCanonical(canonical);
+				byte[] dst = new byte[Huff.maxCompressedLength(data.length)];
+				int size = huff.compress(data, 0, data.length, dst);
+				assertEquals(size, huff.compressedBytes());
+				assertTrue(size <= data.length + 12);
+				byte[] back = new byte[data.length];
+				assertEquals(data.length, new Huff().decompress(dst, 0, size, back));
+				assertArrayEquals(data, back);
+
+				//direct buffers of the exact size, two messages in a row
+				ByteBuffer src = ByteBuffer.allocateDirect(data.length);
+				src.put(data).flip();
+				ByteBuffer packed = ByteBuffer.allocateDirect(2 * size);
+				assertEquals(size, huff.compress(src, packed));
+				assertFalse(src.hasRemaining());
+				src.flip();
+				assertEquals(size, huff.compress(src, packed));
+				assertFalse(packed.hasRemaining());
+				packed.flip();
+				ByteBuffer out = ByteBuffer.allocateDirect(2 * data.length);
+				assertEquals(data.length, huff.decompress(packed, out));
+				assertEquals(size, packed.position());
+				assertEquals(data.length, huff.decompress(packed, out));
+				assertFalse(packed.hasRemaining());
+				out.flip();
+				for(int i = 0; i < 2 * data.length; i++) {
+					assertEquals(data[i % data.length], out.get(i));
+				}
+			}
+		}
+	}
+
+	/**
+	 * test that compressing into a destination that is too small is refused
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInMemoryTooSmall() throws IOException {
+		byte[] data = "too small".getBytes("UTF-8");
+		new Huff().compress(data, 0, data.length, new byte[4]);
+	}
+
+	//encode a string in memory with header and PSEUDO_EOF
+	private byte[] encode(Huff huff, String str) throws IOException {
+		huff.makeHuffTree(new ByteArrayInputStream(str.getBytes("UTF-8")));
+		huff.makeTable();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BitOutputStream bitOut = new BitOutputStream(out);
+		huff.writeHeader(bitOut);
+		for(char c : str.toCharArray()) {
+			String code = huff.getCode(c);
+			bitOut.write(code.length(), Integer.parseInt(code, 2));
+		}
+		String eof = huff.getCode(PSEUDO_EOF);
+		bitOut.write(eof.length(), Integer.parseInt(eof, 2));
+		bitOut.close();
+		return out.toByteArray();
+	}
+
+	//decode a string encoded by encode
+	private String decode(Huff huff, byte[] encoded) throws IOException {
+		BitInputStream in = new BitInputStream(new ByteArrayInputStream(encoded));
+		HuffDecoder decoder = new HuffDecoder(huff.readHeader(in));
+		StringBuilder sb = new StringBuilder();
+		int c;
+		while((c = decoder.decode(in)) != PSEUDO_EOF) {
+			sb.append((char)c);
+		}
+		return sb.toString();
+	}
 }
@@ -0,0 +1,16 @@
+/**
+ * Receives the output of decoding in batches, for diagnostics such as
+ * tracing or progress reports. It is called once per batch of bytes,
+ * never once per chunk, so it costs next to nothing while decoding.
+ */
+public interface IDecodeListener {
+
+    /**
+     * Called for every batch of decoded bytes before it is written.
+     * @param batch holds the decoded bytes from index 0, it is reused after
+     * the call returns and must not be changed
+     * @param len is the number of bytes in the batch
+     * @param total is the number of bytes decoded so far, this batch included
+     */
+    public void decoded(byte[] batch, int len, long total);
+}
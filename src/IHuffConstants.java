@@ -37,4 +37,51 @@ public interface IHuffConstants {
      * Isolate the magic number in one place.
      */
     public static final int MAGIC_NUMBER = 1234567873;
+    
+    /**
+     * Magic number of files whose header stores canonical code lengths
+     * instead of the tree.
+     */
+    public static final int CANONICAL_MAGIC_NUMBER = 1234567874;
+    
+    /**
+     * Magic number of the block container written by <code>BlockHuff</code>.
+     */
+    public static final int FRAMED_MAGIC_NUMBER = 1234567875;
+    
+    /**
+     * Magic number of data compressed against a <code>HuffDictionary</code>,
+     * followed by the dictionary ID instead of a code table.
+     */
+    public static final int DICTIONARY_MAGIC_NUMBER = 1234567876;
+    
+    /**
+     * Magic number of data written by <code>AdaptiveHuff</code>.
+     */
+    public static final int ADAPTIVE_MAGIC_NUMBER = 1234567877;
+    
+    /**
+     * Magic number of data written by <code>WideHuff</code> with chunks
+     * wider than BITS_PER_WORD.
+     */
+    public static final int WIDE_MAGIC_NUMBER = 1234567878;
+    
+    /**
+     * Magic number of data stored as it is because it does not compress,
+     * followed by its length in bytes (64 bits) and the bytes.
+     */
+    public static final int STORED_MAGIC_NUMBER = 1234567879;
+    
+    /**
+     * Magic number that starts and ends an archive written by
+     * <code>HuffArchiveWriter</code>.
+     */
+    public static final int ARCHIVE_MAGIC_NUMBER = 1234567880;
+    
+    /**
+     * Magic number of a dictionary saved by <code>HuffDictionary</code>,
+     * not the one of data compressed against it so that neither is taken
+     * for the other.
+     */
+    public static final int SAVED_DICTIONARY_MAGIC_NUMBER = 1234567881;
 }
@@ -0,0 +1,235 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Huffman model for chunks wider than a byte, e.g., 12-bit chunks or byte
+ * pairs. The input is cut into chunks of <code>width</code> bits, which on
+ * structured binary data gives better compression than single bytes and
+ * half as many chunks to code per byte for 16-bit chunks.
+ * <P>
+ * Layout: WIDE_MAGIC_NUMBER (32 bits), the width (8 bits), the number of
+ * leftover bits at the end of the input that do not fill a chunk (8 bits),
+ * the canonical code lengths of all 2^width chunks and PSEUDO_EOF in the
+ * format of <code>CanonicalCode</code>, the codes, the code of PSEUDO_EOF,
+ * which here is the chunk value 2^width, and the leftover bits as they are.
+ */
+public class WideHuff implements IHuffModel {
+
+	/**
+	 * Smallest chunk width in bits.
+	 */
+	public static final int MIN_WIDTH = BITS_PER_WORD;
+
+	/**
+	 * Largest chunk width in bits.
+	 */
+	public static final int MAX_WIDTH = 16;
+
+	/**
+	 * Longest code in bits, longer codes are avoided with a length-limited code.
+	 */
+	public static final int MAX_CODE_LENGTH = 24;
+
+	private static final int COUNT_BITS = 8;
+
+	private int width;
+	private int eof;
+	private int[] lengths;
+	private int[] codes;
+
+	/**
+	 * class Constructor
+	 * @param width is the number of bits per chunk, MIN_WIDTH to MAX_WIDTH
+	 */
+	public WideHuff(int width) {
+		if(width < MIN_WIDTH || width > MAX_WIDTH) {
+			throw new IllegalArgumentException();
+		}
+		this.width = width;
+		eof = 1 << width;
+	}
+
+	/**
+	 * Write a compressed version of the input file. If force is false and
+	 * the result is not smaller than the input, nothing is written.
+	 */
+	@Override
+	public int write(String inFile, String outFile, boolean force) {
+		if(inFile == null || outFile == null || inFile.length() == 0 || outFile.length() == 0) {
+			throw new IllegalArgumentException();
+		}
+		long bits = new File(inFile).length() * BITS_PER_WORD;
+		long outputSize = 0;
+		try {
+			BufferedBitInputStream in = new BufferedBitInputStream(inFile);
+			CharCounter counter = count(in, bits);
+			in.close();
+			outputSize = makeCodes(counter, bits);
+			if(outputSize >= bits && !force) {
+				return Huff.saturate(outputSize);
+			}
+			BitOutputStream out = Huff.openOutput(outFile, outputSize / BITS_PER_WORD);
+			in = new BufferedBitInputStream(inFile);
+			writeAll(in, bits, (BufferedBitOutputStream)out);
+			in.close();
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return Huff.saturate(outputSize);
+	}
+
+	/**
+	 * Write a compressed version of <code>len</code> bytes of an array.
+	 * @param src is the array holding the data to be compressed
+	 * @param off is the index of the first byte
+	 * @param len is the number of bytes
+	 * @param out is where the compressed data is written, it is flushed but not closed
+	 * @return the size of the compressed data in bits
+	 * @throws IOException if writing fails
+	 */
+	public int write(byte[] src, int off, int len, OutputStream out) throws IOException {
+		if(src == null || out == null || off < 0 || len < 0 || off + len > src.length) {
+			throw new IllegalArgumentException();
+		}
+		long bits = (long)len * BITS_PER_WORD;
+		long outputSize = makeCodes(count(new BufferedBitInputStream(ByteBuffer.wrap(src, off, len)), bits), bits);
+		BufferedBitOutputStream bitsOut = new BufferedBitOutputStream(out);
+		writeAll(new BufferedBitInputStream(ByteBuffer.wrap(src, off, len)), bits, bitsOut);
+		bitsOut.flush();
+		return Huff.saturate(outputSize);
+	}
+
+	/**
+	 * count the chunks of the input
+	 * @param bits is the size of the input in bits
+	 */
+	private CharCounter count(BufferedBitInputStream in, long bits) throws IOException {
+		CharCounter counter = new CharCounter(eof);
+		for(long n = bits / width; n > 0; n--) {
+			counter.add((int)in.readBits(width));
+		}
+		return counter;
+	}
+
+	/**
+	 * build the canonical code from the counts
+	 * @return the size of the compressed data in bits
+	 */
+	private long makeCodes(CharCounter counter, long bits) {
+		long[] weights = new long[eof + 1];
+		boolean empty = true;
+		for(int i = 0; i < eof; i++) {
+			weights[i] = counter.getLongCount(i);
+			empty &= weights[i] == 0;
+		}
+		weights[eof] = 1;
+		if(empty) {
+			//PSEUDO_EOF alone still needs a one-bit code and the code has
+			//to be complete, so chunk 0 gets the other one
+			weights[0] = 1;
+		}
+		lengths = CanonicalCode.huffmanLengths(weights);
+		if(CanonicalCode.maxLength(lengths) > MAX_CODE_LENGTH) {
+			lengths = CanonicalCode.limitedLengths(weights, MAX_CODE_LENGTH);
+		}
+		codes = CanonicalCode.codes(lengths);
+		long size = BITS_PER_INT + 2 * COUNT_BITS + CanonicalCode.lengthsSize(lengths)
+				+ lengths[eof] + bits % width;
+		for(int i = 0; i < eof; i++) {
+			size += lengths[i] * counter.getLongCount(i);
+		}
+		return size;
+	}
+
+	/**
+	 * write the header, the codes of all chunks and the leftover bits
+	 */
+	private void writeAll(BufferedBitInputStream in, long bits, BufferedBitOutputStream out) throws IOException {
+		int rest = (int)(bits % width);
+		out.write(BITS_PER_INT, WIDE_MAGIC_NUMBER);
+		out.write(COUNT_BITS, width);
+		out.write(COUNT_BITS, rest);
+		CanonicalCode.writeLengths(out, lengths);
+		for(long n = bits / width; n > 0; n--) {
+			int ch = (int)in.readBits(width);
+			out.writeBits(lengths[ch], codes[ch]);
+		}
+		out.writeBits(lengths[eof], codes[eof]);
+		out.writeBits(rest, in.readBits(rest));
+	}
+
+	/**
+	 * Uncompress a file written by <code>write</code>.
+	 */
+	@Override
+	public int uncompress(String inFile, String outFile) {
+		BufferedBitInputStream in = new BufferedBitInputStream(inFile);
+		BitOutputStream out = Huff.openOutput(outFile, new File(inFile).length());
+		long outSize = 0;
+		try {
+			outSize = decode(in, (BufferedBitOutputStream)out);
+		} catch (IOException e) {
+			System.out.println("Uncompressing Error");
+		}
+		in.close();
+		out.close();
+		return Huff.saturate(outSize);
+	}
+
+	/**
+	 * Uncompress a stream written by <code>write</code>.
+	 * @param in is the compressed stream
+	 * @param out is where the uncompressed bytes are written, it is flushed but not closed
+	 * @return the size of the uncompressed data in bits
+	 * @throws IOException if the data is not valid or reading/writing fails
+	 */
+	public static long uncompress(InputStream in, OutputStream out) throws IOException {
+		BufferedBitInputStream bits = in instanceof BufferedBitInputStream
+				? (BufferedBitInputStream)in : new BufferedBitInputStream(in);
+		BufferedBitOutputStream bitsOut = new BufferedBitOutputStream(out);
+		long size = decode(bits, bitsOut);
+		bitsOut.flush();
+		return size;
+	}
+
+	/**
+	 * read the header and decode the chunks
+	 * @return the number of bits written
+	 */
+	private static long decode(BufferedBitInputStream in, BufferedBitOutputStream out) throws IOException {
+		if(in.read(BITS_PER_INT) != WIDE_MAGIC_NUMBER) {
+			throw new IOException("magic number not right");
+		}
+		return decodeAfterMagic(in, out);
+	}
+
+	/**
+	 * decode everything after the magic number
+	 * @return the number of bits written
+	 */
+	static long decodeAfterMagic(BufferedBitInputStream in, BufferedBitOutputStream out) throws IOException {
+		int width = in.read(COUNT_BITS);
+		int rest = in.read(COUNT_BITS);
+		if(width < MIN_WIDTH || width > MAX_WIDTH || rest < 0 || rest >= width) {
+			throw new IOException("bad chunk width in header");
+		}
+		int eof = 1 << width;
+		int[] lengths = CanonicalCode.readLengths(in, eof + 1);
+		HuffDecoder decoder = new HuffDecoder(CanonicalCode.codes(lengths), lengths);
+		long size = 0;
+		int ch;
+		while((ch = decoder.decode(in)) != eof) {
+			out.writeBits(width, ch);
+			size += width;
+		}
+		out.writeBits(rest, in.readBits(rest));
+		if(in.overrun()) {
+			throw new IOException("unexpected end of input");
+		}
+		return size + rest;
+	}
+}
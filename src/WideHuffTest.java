@@ -0,0 +1,92 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the model with chunks wider than a byte.
+ */
+public class WideHuffTest {
+
+	/**
+	 * 16-bit values from a small set, as in structured binary data
+	 */
+	private static byte[] structured(int size, Random rnd) {
+		int[] values = new int[300];
+		for(int i = 0; i < values.length; i++) {
+			values[i] = rnd.nextInt(1 << 16);
+		}
+		byte[] data = new byte[size];
+		for(int i = 0; i + 1 < size; i += 2) {
+			int v = values[Math.min(values.length - 1, (int)(-Math.log(rnd.nextDouble()) * 40))];
+			data[i] = (byte)(v >>> 8);
+			data[i + 1] = (byte)v;
+		}
+		return data;
+	}
+
+	/**
+	 * compress with every width and test that the data comes back, including
+	 * leftover bits that do not fill a chunk
+	 */
+	@Test
+	public final void testRoundTrip() throws IOException {
+		Random rnd = new Random(4);
+		byte[] data = structured(20001, rnd);
+		for(int width = WideHuff.MIN_WIDTH; width <= WideHuff.MAX_WIDTH; width++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int size = new WideHuff(width).write(data, 0, data.length, out);
+			assertEquals((size + 7) / 8, out.size());
+			ByteArrayOutputStream back = new ByteArrayOutputStream();
+			assertEquals(data.length * 8L, WideHuff.uncompress(new ByteArrayInputStream(out.toByteArray()), back));
+			assertArrayEquals(data, back.toByteArray());
+			back.reset();
+			assertEquals(data.length * 8, new Huff().uncompress(new ByteArrayInputStream(out.toByteArray()), back));
+			assertArrayEquals(data, back.toByteArray());
+		}
+	}
+
+	/**
+	 * test that 16-bit chunks compress structured data better than bytes
+	 * and that files written with them are uncompressed by Huff
+	 */
+	@Test
+	public final void testWideFile() throws IOException {
+		File in = File.createTempFile("wideIn", ".bin");
+		File out = File.createTempFile("wideOut", ".hf");
+		File back = File.createTempFile("wideBack", ".bin");
+		try {
+			byte[] data = structured(100000, new Random(8));
+			Files.write(in.toPath(), data);
+			int wide = new WideHuff(16).write(in.getPath(), out.getPath(), false);
+			Huff huff = new Huff();
+			huff.setCanonical(true);
+			int bytes = huff.write(data, 0, data.length, new ByteArrayOutputStream(), true);
+			assertTrue(wide < bytes * 0.8);
+			assertEquals(data.length * 8, new Huff().uncompress(out.getPath(), back.getPath()));
+			assertArrayEquals(data, Files.readAllBytes(back.toPath()));
+		} finally {
+			in.delete();
+			out.delete();
+			back.delete();
+		}
+	}
+
+	/**
+	 * test that empty input comes back empty
+	 */
+	@Test
+	public final void testEmpty() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new WideHuff(12).write(new byte[0], 0, 0, out);
+		ByteArrayOutputStream back = new ByteArrayOutputStream();
+		assertEquals(0, WideHuff.uncompress(new ByteArrayInputStream(out.toByteArray()), back));
+		assertEquals(0, back.size());
+	}
+}